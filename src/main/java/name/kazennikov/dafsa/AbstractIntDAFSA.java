@@ -10,6 +10,8 @@ import java.util.List;
 import java.util.PriorityQueue;
 
 import name.kazennikov.fsa.Constants;
+import name.kazennikov.fsa.IntFSAView;
+import name.kazennikov.fsa.MemoryFootprint;
 
 /**
  * Abstract DAFSA builder. It almost complete implementation, where only
@@ -24,7 +26,7 @@ import name.kazennikov.fsa.Constants;
  * @author Anton Kazennikov
  *
  */
-public abstract class AbstractIntDAFSA extends IntDaciukAlgoIndexed {
+public abstract class AbstractIntDAFSA extends IntDaciukAlgoIndexed implements IntFSAView {
 	
 	/**
 	 * Decode label from the transition table value
@@ -188,6 +190,9 @@ public abstract class AbstractIntDAFSA extends IntDaciukAlgoIndexed {
 
 			State other = (State) obj;
 			
+			if(listener != null)
+				probes++;
+			
 			if(!finalEquals(number, other.number))
 				return false;
 
@@ -236,6 +241,7 @@ public abstract class AbstractIntDAFSA extends IntDaciukAlgoIndexed {
 	}
 	
 	GenericRegister<State> register = new GenericRegister<State>();
+	int probes; // state comparisons of the current register lookup, counted only with listener
 	
 	@Override
 	public void regAdd(int state) {
@@ -249,8 +255,12 @@ public abstract class AbstractIntDAFSA extends IntDaciukAlgoIndexed {
 
 	@Override
 	public int regGet(int state) {
+		probes = 0;
 		State s = register.get(states.get(state));
 		
+		if(listener != null)
+			listener.registerProbe(probes);
+		
 		if(s == null)
 			return Constants.INVALID_STATE;
 
@@ -306,8 +316,14 @@ public abstract class AbstractIntDAFSA extends IntDaciukAlgoIndexed {
 	
 	@Override
 	public int addState() {
-		if(!free.isEmpty())
-			return free.poll().getNumber();
+		if(!free.isEmpty()) {
+			int state = free.poll().getNumber();
+			
+			if(listener != null)
+				listener.stateReused(state);
+			
+			return state;
+		}
 		
 		State s = new State();
 		s.number = states.size();
@@ -329,6 +345,9 @@ public abstract class AbstractIntDAFSA extends IntDaciukAlgoIndexed {
 		State s = states.get(state);
 		s.reset();
 		free.add(s);
+		
+		if(listener != null)
+			listener.stateFreed(state);
 	}
 	
 	public int size() {
@@ -352,6 +371,47 @@ public abstract class AbstractIntDAFSA extends IntDaciukAlgoIndexed {
 		return startState;
 	}
 	
+	/**
+	 * Ensure that state with given number exists. Used when the DAFSA
+	 * is filled from the event stream, where states are referenced before they are started
+	 * 
+	 * @param state state number
+	 */
+	void ensureState(int state) {
+		while(states.size() <= state) {
+			addState();
+		}
+	}
+	
+	/**
+	 * Release the register and free state queue before release-as-you-go emission.
+	 * After that the DAFSA couldn't be modified
+	 */
+	void releaseRegister() {
+		register = new GenericRegister<State>();
+		free.clear();
+	}
+	
+	/**
+	 * Release emitted state, so it could be garbage collected during emission
+	 * 
+	 * @param state state number
+	 */
+	void releaseState(int state) {
+		states.set(state, null);
+	}
+	
+	/**
+	 * Register all states except the start state. Used after the DAFSA is filled
+	 * from the minimal event stream, so it could be extended by addMinWord()
+	 */
+	void registerAll() {
+		for(State s : states) {
+			if(s.getNumber() != startState)
+				regAdd(s.getNumber());
+		}
+	}
+	
 	/**
 	 * Initialize finality values for this FSA
 	 */
@@ -444,12 +504,62 @@ public abstract class AbstractIntDAFSA extends IntDaciukAlgoIndexed {
 	public int transitionCount() {
 		int count = 0;
 		for(State s : states) {
-			count += s.next.size();
+			if(s != null)
+				count += s.next.size();
 		}
 		
 		return count;
 
 	}
+	
+	/**
+	 * Compute memory footprint of the DAFSA. Transition lists are counted 
+	 * with their default capacity as they are never trimmed
+	 */
+	public MemoryFootprint footprint() {
+		MemoryFootprint fp = new MemoryFootprint();
+		long stateBytes = MemoryFootprint.arrayList(states.size());
+		long transitionBytes = 0;
+		int stateCount = 0;
+		int transitionCount = 0;
+		
+		for(State s : states) {
+			if(s == null)
+				continue;
+			
+			stateCount++;
+			transitionCount += s.next.size();
+			stateBytes += MemoryFootprint.object(MemoryFootprint.REFERENCE + 16 + 2);
+			transitionBytes += MemoryFootprint.troveList(Math.max(10, s.next.size()), 8);
+		}
+		
+		// free state queue
+		stateBytes += MemoryFootprint.object(MemoryFootprint.REFERENCE * 2 + 8) + MemoryFootprint.array(free.size(), MemoryFootprint.REFERENCE);
+		
+		fp.add(MemoryFootprint.Part.STATES, stateCount - free.size(), stateBytes);
+		fp.add(MemoryFootprint.Part.TRANSITIONS, transitionCount, transitionBytes);
+		fp.add(MemoryFootprint.Part.REGISTER, register.size(), MemoryFootprint.object(MemoryFootprint.REFERENCE) + MemoryFootprint.hashMap(register.size()));
+		finalsFootprint(fp);
+		
+		return fp;
+	}
+	
+	/**
+	 * Add footprint of the final values to given footprint. By default
+	 * only final states are counted, subclasses add the size of their final value storage
+	 * 
+	 * @param fp target footprint
+	 */
+	protected void finalsFootprint(MemoryFootprint fp) {
+		int count = 0;
+		
+		for(State s : states) {
+			if(s != null && isFinalState(s.getNumber()))
+				count++;
+		}
+		
+		fp.add(MemoryFootprint.Part.FINALS, count, 0);
+	}
 
 
 }
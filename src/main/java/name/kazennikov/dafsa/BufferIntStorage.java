@@ -0,0 +1,189 @@
+package name.kazennikov.dafsa;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Off-heap storage of {@link IntBuffer} segments. The segments are either direct buffers
+ * or regions of a memory-mapped file. The data doesn't occupy the heap and isn't copied on growth.
+ * 
+ * The file of the mapped storage is in native byte order, as the storage is intended for the data
+ * that is read on the same platform. The read-only storage maps a region of an existing file
+ * in big-endian order, as the files are written by {@link java.nio.ByteBuffer} defaults.
+ *
+ */
+public class BufferIntStorage implements IntStorage {
+	public static final int DEFAULT_SEGMENT_BITS = 22; // 16 MB segments
+	
+	final int segmentBits;
+	final int segmentMask;
+	final FileChannel channel;
+	final boolean readOnly;
+	IntBuffer[] segments = new IntBuffer[0];
+	
+	BufferIntStorage(int segmentBits, FileChannel channel, boolean readOnly) {
+		this.segmentBits = segmentBits;
+		this.segmentMask = (1 << segmentBits) - 1;
+		this.channel = channel;
+		this.readOnly = readOnly;
+	}
+	
+	/**
+	 * Create storage of direct buffers
+	 * 
+	 * @param segmentBits log2 of segment size in ints
+	 */
+	public static BufferIntStorage direct(int segmentBits) {
+		return new BufferIntStorage(segmentBits, null, false);
+	}
+	
+	public static BufferIntStorage direct() {
+		return direct(DEFAULT_SEGMENT_BITS);
+	}
+	
+	/**
+	 * Create storage mapped to the file. Existing file is truncated
+	 * 
+	 * @param file backing file
+	 * @param segmentBits log2 of segment size in ints
+	 */
+	public static BufferIntStorage mapped(Path file, int segmentBits) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		return new BufferIntStorage(segmentBits, channel, false);
+	}
+	
+	public static BufferIntStorage mapped(Path file) throws IOException {
+		return mapped(file, DEFAULT_SEGMENT_BITS);
+	}
+	
+	/**
+	 * Map region of the file read-only. The storage can't grow: set() throws
+	 * {@link java.nio.ReadOnlyBufferException} and growth throws {@link UnsupportedOperationException}
+	 * 
+	 * @param file source file
+	 * @param offset region start in bytes
+	 * @param length region length in ints
+	 */
+	public static BufferIntStorage mapReadOnly(Path file, long offset, long length) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		BufferIntStorage storage = new BufferIntStorage(DEFAULT_SEGMENT_BITS, channel, true);
+		int count = (int) ((length + storage.segmentMask) >>> storage.segmentBits);
+		storage.segments = new IntBuffer[count];
+		
+		try {
+			for(int i = 0; i < count; i++) {
+				long start = (long) i << storage.segmentBits;
+				long size = Math.min(length - start, 1L << storage.segmentBits);
+				storage.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + 4 * start, 4 * size)
+						.order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+			}
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+		
+		return storage;
+	}
+	
+	IntBuffer newSegment(int index) {
+		if(readOnly)
+			throw new UnsupportedOperationException("Storage is read-only");
+		
+		int bytes = 4 << segmentBits;
+		
+		if(channel == null)
+			return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+		
+		try {
+			return channel.map(FileChannel.MapMode.READ_WRITE, (long) index * bytes, bytes)
+					.order(ByteOrder.nativeOrder()).asIntBuffer();
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public int get(long index) {
+		return segments[(int) (index >>> segmentBits)].get((int) index & segmentMask);
+	}
+
+	@Override
+	public void set(long index, int value) {
+		segments[(int) (index >>> segmentBits)].put((int) index & segmentMask, value);
+	}
+
+	@Override
+	public void copy(long src, long dest, long length) {
+		if(dest < src) {
+			for(long i = 0; i < length; i++) {
+				set(dest + i, get(src + i));
+			}
+		} else {
+			for(long i = length - 1; i >= 0; i--) {
+				set(dest + i, get(src + i));
+			}
+		}
+	}
+
+	@Override
+	public long capacity() {
+		if(segments.length == 0)
+			return 0;
+		
+		// the last segment of read-only storage could be partial
+		return ((long) (segments.length - 1) << segmentBits) + segments[segments.length - 1].capacity();
+	}
+
+	@Override
+	public void ensureCapacity(long capacity) {
+		int count = (int) ((capacity + segmentMask) >>> segmentBits);
+		
+		if(count <= segments.length)
+			return;
+		
+		int oldCount = segments.length;
+		segments = Arrays.copyOf(segments, count);
+		
+		for(int i = oldCount; i < count; i++) {
+			segments[i] = newSegment(i);
+		}
+	}
+
+	@Override
+	public void trim(long capacity) {
+		int count = (int) ((capacity + segmentMask) >>> segmentBits);
+		
+		if(count >= segments.length)
+			return;
+		
+		segments = Arrays.copyOf(segments, count);
+		
+		if(channel != null && !readOnly) {
+			try {
+				channel.truncate(((long) count << segmentBits) * 4);
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Closes the storage. The buffers are released when they are garbage collected
+	 */
+	@Override
+	public void close() throws IOException {
+		segments = new IntBuffer[0];
+		
+		if(channel != null)
+			channel.close();
+	}
+
+}
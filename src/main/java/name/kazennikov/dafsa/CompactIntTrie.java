@@ -3,45 +3,106 @@ package name.kazennikov.dafsa;
 import cern.colt.GenericSorting;
 import cern.colt.Swapper;
 import cern.colt.function.IntComparator;
-import gnu.trove.iterator.TIntIterator;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.hash.TLongHashSet;
+import name.kazennikov.fsa.MemoryFootprint;
+import name.kazennikov.fsa.walk.IntSectionWriter;
 import name.kazennikov.trove.TIntDeque;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created on 8/30/15.
  *
  * @author Anton Kazennikov
  */
-public class CompactIntTrie {
+public class CompactIntTrie implements Closeable {
 
 	public static final int RESERVED = Integer.MIN_VALUE;
 
+	/**
+	 * Keep transitions of each state sorted by label, so the lookup could use binary search
+	 */
+	public static final int SORTED = 1;
+
+	/**
+	 * Store labels and targets of a state in separate runs instead of (label, next) pairs,
+	 * so the label scan reads contiguous memory
+	 */
+	public static final int SPLIT = 2;
+
+	/**
+	 * Store the final values in the tries: the target slot of the final transition (label 0)
+	 * holds the value of the word instead of a pointer to a leaf state
+	 */
+	public static final int PAYLOAD = 8;
+
+	public static final int DEFAULT_BINARY_SEARCH_THRESHOLD = 8;
+
+	// flag of the file header
+	static final int MINIMIZED = 4;
+
+	/**
+	 * File format magic, 'CITR'
+	 */
+	public static final int MAGIC = 0x43495452;
+	public static final int HEADER_SIZE = 28;
+
 
     /**
      * Chunked memory allocator.
      * Splits given memory area into chunks nd tracks
      * allocation, so the chunks could be freed and reused.
      *
+     * The memory is provided by {@link IntStorage} and addressed by long pointers.
+     * The pointers are stored in the data as unsigned ints, so the allocated area
+     * is limited by 2^32 - 1 ints (16 GB).
      *
      */
 	public static class ChunkAllocator {
+		public static final long MAX_SIZE = 0xFFFFFFFFL;
 
         // actual data
-		int[] data;
+		IntStorage data;
 		// pointer to unallocated area
-		int unallocPtr;
+		long unallocPtr;
 
-		// buckets of free chunks
+		// buckets of free chunks, pointers are stored as unsigned ints
 		TIntDeque[] q = new TIntDeque[0];
 
+		// fragmentation statistics
+		long freeSize;
+		int freeChunks;
+		long allocCount;
+		long reuseCount;
+		long freeCount;
 
 
 		public ChunkAllocator(int size) {
-			data = new int[size];
+			this(new HeapIntStorage(size));
+		}
+
+		public ChunkAllocator(IntStorage data) {
+			this.data = data;
+		}
+
+		public IntStorage storage() {
+			return data;
 		}
 
         /**
@@ -69,16 +130,10 @@ public class CompactIntTrie {
          * @param dataSize size of the requested block
          */
 		public void ensureFree(int dataSize) {
-			if(data.length - unallocPtr > dataSize)
-				return;
-
-			int newSize = data.length;
+			if(unallocPtr + dataSize > MAX_SIZE)
+				throw new IllegalStateException("Allocation area is exhausted");
 
-			while(newSize - unallocPtr < dataSize) {
-				newSize = newSize + (newSize >> 2);
-			}
-
-			data = realloc(data, newSize);
+			data.ensureCapacity(unallocPtr + dataSize);
 		}
 
 
@@ -87,19 +142,23 @@ public class CompactIntTrie {
          * @param bucketIndex requested bucketIndex
          * @return block pointer
          */
-        public int alloc(int bucketIndex) {
+        public long alloc(int bucketIndex) {
             TIntDeque q = queueFor(bucketIndex);
 
+            allocCount++;
+            int dataSize = bucketSize(bucketIndex);
+
             if(!q.isEmpty()) {
-                return q.pollFirst();
+                reuseCount++;
+                freeChunks--;
+                freeSize -= dataSize;
+                return q.pollFirst() & MAX_SIZE;
             }
 
-            int dataSize = bucketSize(bucketIndex);
-
 
             ensureFree(dataSize);
 
-            int ptr = unallocPtr;
+            long ptr = unallocPtr;
             unallocPtr += dataSize;
 
             return ptr;
@@ -110,13 +169,96 @@ public class CompactIntTrie {
          * @param ptr chunk pointer
          * @param bucketIndex bucket index
          */
-		public void free(int ptr, int bucketIndex) {
+		public void free(long ptr, int bucketIndex) {
 			TIntDeque q = queueFor(bucketIndex);
-			q.addLast(ptr);
+			q.addLast((int) ptr);
+			freeCount++;
+			freeChunks++;
+			freeSize += bucketSize(bucketIndex);
 		}
 
+        /**
+         * Drop all free chunks and set the allocation pointer. Used after the live chunks
+         * are moved to the beginning of the data
+         *
+         * @param unallocPtr new pointer to unallocated area
+         */
+        public void reset(long unallocPtr) {
+            for(TIntDeque queue : q) {
+                queue.clear();
+            }
 
-		public int getUnallocPtr() {
+            this.unallocPtr = unallocPtr;
+            freeSize = 0;
+            freeChunks = 0;
+        }
+
+        /**
+         * Shrink the data to the allocated area and given number of spare ints
+         *
+         * @param spare number of spare ints after the allocated area
+         */
+        public void trim(long spare) {
+            data.trim(unallocPtr + spare);
+        }
+
+        /**
+         * Size of the free chunks in ints
+         */
+        public long freeSize() {
+            return freeSize;
+        }
+
+        /**
+         * Number of the free chunks
+         */
+        public int freeChunks() {
+            return freeChunks;
+        }
+
+        /**
+         * Size of the allocated chunks in ints
+         */
+        public long liveSize() {
+            return unallocPtr - freeSize;
+        }
+
+        /**
+         * Fraction of the allocated area occupied by free chunks
+         */
+        public double fragmentation() {
+            return unallocPtr == 0? 0 : (double) freeSize / unallocPtr;
+        }
+
+        /**
+         * Number of alloc() calls
+         */
+        public long allocCount() {
+            return allocCount;
+        }
+
+        /**
+         * Number of allocations served from the free chunks
+         */
+        public long reuseCount() {
+            return reuseCount;
+        }
+
+        /**
+         * Number of free() calls
+         */
+        public long freeCount() {
+            return freeCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("allocated: %d, live: %d, free: %d in %d chunks (%.1f%%), allocs: %d (%d reused), frees: %d",
+                    unallocPtr, liveSize(), freeSize, freeChunks, 100 * fragmentation(), allocCount, reuseCount, freeCount);
+        }
+
+
+		public long getUnallocPtr() {
 			return unallocPtr;
 		}
 
@@ -158,20 +300,103 @@ public class CompactIntTrie {
 
 
     /*
+        Interleaved layout (default):
         2i - label
         2i+1 - next state
+
+        Split layout (SPLIT flag), cap - transition capacity of the chunk:
+        i - label
+        cap + i - next state
+
+        Payload mode (PAYLOAD flag): the next state slot of the final transition (label 0)
+        holds the final value
      */
     ChunkAllocator m;
-
-    int start;
+    IntStorage data;
+    boolean sorted;
+    final boolean split;
+    final boolean payload;
+    // arena of the long values in payload mode, the final slot holds the index
+    TLongArrayList longValues = new TLongArrayList();
+    int binarySearchThreshold = DEFAULT_BINARY_SEARCH_THRESHOLD;
+
+    long start;
     int stateCount;
+    long relocations;
+    int compactions;
+    boolean minimized;
+    // mapped read-only
+    boolean readOnly;
 
 
     public CompactIntTrie() {
-		m = new ChunkAllocator(256);
-		start = addState(true);
+		this(new HeapIntStorage(256));
 	}
 
+    /**
+     * Create trie on given storage
+     * @param storage storage of the trie data
+     */
+    public CompactIntTrie(IntStorage storage) {
+        this(storage, 0);
+    }
+
+    /**
+     * Create trie on existing data
+     */
+    CompactIntTrie(IntStorage storage, int flags, long start, int stateCount, long unallocPtr) {
+        m = new ChunkAllocator(storage);
+        m.unallocPtr = unallocPtr;
+        data = storage;
+        sorted = (flags & SORTED) != 0;
+        split = (flags & SPLIT) != 0;
+        payload = (flags & PAYLOAD) != 0;
+        minimized = (flags & MINIMIZED) != 0;
+        this.start = start;
+        this.stateCount = stateCount;
+    }
+
+    /**
+     * Create trie on given storage with given layout
+     * @param storage storage of the trie data
+     * @param flags layout flags: {@link #SORTED}, {@link #SPLIT}, {@link #PAYLOAD}
+     */
+    public CompactIntTrie(IntStorage storage, int flags) {
+        m = new ChunkAllocator(storage);
+        data = storage;
+        sorted = (flags & SORTED) != 0;
+        split = (flags & SPLIT) != 0;
+        payload = (flags & PAYLOAD) != 0;
+        start = addState(true);
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    public boolean isSplit() {
+        return split;
+    }
+
+    public boolean isPayload() {
+        return payload;
+    }
+
+    /**
+     * Checks if the target of the transition is a state, i.e. it isn't a final value
+     */
+    boolean isPointer(int label) {
+        return !payload || label != 0;
+    }
+
+    /**
+     * Set minimal transition count of a state to use binary search in sorted mode.
+     * Below it the labels are scanned linearly
+     */
+    public void setBinarySearchThreshold(int binarySearchThreshold) {
+        this.binarySearchThreshold = binarySearchThreshold;
+    }
+
 	public static int[] realloc(int[] a, int newLength) {
 		assert newLength >= a.length;
 
@@ -190,29 +415,128 @@ public class CompactIntTrie {
 		return (E) o;
 	}
 
+    /**
+     * Read state pointer stored as unsigned int
+     */
+    long ptr(long index) {
+        return data.get(index) & ChunkAllocator.MAX_SIZE;
+    }
+
 
 
 
 
+    /**
+     * Allocate a state chunk
+     * @param bucket chunk bucket
+     */
+    protected long allocChunk(int bucket) {
+        return m.alloc(bucket);
+    }
 
+    /**
+     * Release the chunk of the relocated state
+     * @param state old state address
+     * @param bucket old chunk bucket
+     */
+    protected void relocated(long state, int bucket) {
+        m.free(state, bucket);
+        relocations++;
+    }
 
     /**
 	 * Add new empty state
      * @param reserve should we reserve memory for a transition? true on known non-leaf states
 	 * @return state index
 	 */
-	public int addState(boolean reserve) {
+	public long addState(boolean reserve) {
+		checkWritable();
 		stateCount++;
 		int bucket = ChunkAllocator.bucket(reserve? 1 : 0);
-		int pos = m.alloc(bucket); // header
+		long pos = allocChunk(bucket); // header
 
-		m.data[pos] = reserve? RESERVED : 0;
+		data.set(pos, reserve? RESERVED : 0);
 
 		return pos;
 	}
 
-	public int stateSize(int state) {
-		return m.data[state] * 2 + 1; // transitions (label, next) + head
+	public int stateSize(long state) {
+		return data.get(state) * 2 + 1; // transitions (label, next) + head
+	}
+
+	/**
+	 * Transition capacity of the state chunk
+	 * @param count state header
+	 */
+	static int capacity(int count) {
+		if(count == RESERVED)
+			return 1;
+
+		return count <= 1? count : Integer.highestOneBit(count - 1) << 1;
+	}
+
+	/**
+	 * Position of the label of i-th transition
+	 * @param state state
+	 * @param count state header
+	 * @param i transition index
+	 */
+	long labelPtr(long state, int count, int i) {
+		return split? state + 1 + i : state + 1 + i * 2;
+	}
+
+	/**
+	 * Position of the target of i-th transition
+	 * @param state state
+	 * @param count state header
+	 * @param i transition index
+	 */
+	long nextPtr(long state, int count, int i) {
+		return split? state + 1 + capacity(count) + i : state + 1 + i * 2 + 1;
+	}
+
+	/**
+	 * Copy run of transitions. Source and destination runs may overlap
+	 */
+	void copyTransitions(long src, int srcCount, int srcIndex, long dest, int destCount, int destIndex, int length) {
+		if(length == 0)
+			return;
+
+		if(split) {
+			data.copy(labelPtr(src, srcCount, srcIndex), labelPtr(dest, destCount, destIndex), length);
+			data.copy(nextPtr(src, srcCount, srcIndex), nextPtr(dest, destCount, destIndex), length);
+		} else {
+			data.copy(labelPtr(src, srcCount, srcIndex), labelPtr(dest, destCount, destIndex), 2 * length);
+		}
+	}
+
+	/**
+	 * Find index of the first transition with label not less than given label
+	 * in sorted state
+	 */
+	int lowerBound(long state, int count, int label) {
+		int lo = 0;
+		int hi = count;
+
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if(data.get(labelPtr(state, count, mid)) < label) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		return lo;
+	}
+
+	/**
+	 * Bucket of the state chunk
+	 */
+	int stateBucket(long state) {
+		int count = data.get(state);
+		return ChunkAllocator.bucket(count == RESERVED? 1 : count);
 	}
 
 	/**
@@ -223,34 +547,41 @@ public class CompactIntTrie {
 	 * @param next dest state
 	 * @return source state (possibly reallocated)
 	 */
-	public int addTransition(int parentState, int state, int label, int next) {
+	public long addTransition(long parentState, long state, int label, long next) {
+		checkWritable();
 
-		int trCount = m.data[state];
-		int oldBucket = ChunkAllocator.bucket(Math.abs(trCount));
-		int newBucket = ChunkAllocator.bucket(Math.abs(trCount) + 1);
+		int trCount = data.get(state);
 
-		// same bucket
-		if(oldBucket == newBucket || trCount == RESERVED) {
+		// reserved chunk has room for one transition
+		if(trCount == RESERVED) {
+			data.set(state, 1);
+			data.set(labelPtr(state, 1, 0), label);
+			data.set(nextPtr(state, 1, 0), (int) next);
+			return state;
+		}
 
-			if(trCount == RESERVED) {
-				m.data[state] = 0;
-				trCount = 0;
-			}
+		int oldBucket = ChunkAllocator.bucket(trCount);
+		int newBucket = ChunkAllocator.bucket(trCount + 1);
+		int pos = sorted? lowerBound(state, trCount, label) : trCount;
 
-			m.data[state]++;
-			m.data[state + 1 + trCount *2] = label;
-			m.data[state + 1 + trCount *2 + 1] = next;
+		// same bucket
+		if(oldBucket == newBucket) {
+			copyTransitions(state, trCount, pos, state, trCount + 1, pos + 1, trCount - pos);
+			data.set(state, trCount + 1);
+			data.set(labelPtr(state, trCount + 1, pos), label);
+			data.set(nextPtr(state, trCount + 1, pos), (int) next);
 			return state;
 		}
 
 
 		// failed to find reserved transitions, relocating the state
-		int newState =  m.alloc(newBucket);
-		m.data[newState] = trCount + 1; // inc transition count
-		System.arraycopy(m.data, state + 1, m.data, newState + 1, trCount*2); // relocateState
-		m.data[newState + trCount*2 + 1] = label;
-		m.data[newState + trCount*2 + 1 + 1] = next;
-		m.free(state, oldBucket);
+		long newState =  allocChunk(newBucket);
+		data.set(newState, trCount + 1); // inc transition count
+		copyTransitions(state, trCount, 0, newState, trCount + 1, 0, pos); // relocateState
+		copyTransitions(state, trCount, pos, newState, trCount + 1, pos + 1, trCount - pos);
+		data.set(labelPtr(newState, trCount + 1, pos), label);
+		data.set(nextPtr(newState, trCount + 1, pos), (int) next);
+		relocated(state, oldBucket);
 
 		// change start if necessary
 		if(state == start) {
@@ -260,13 +591,13 @@ public class CompactIntTrie {
 		// change parent transition
 		if(parentState != -1) {
 
-			int count = m.data[parentState];
+			int count = data.get(parentState);
 
 			// change transition from parentState to state using new state address
 			for(int i = 0; i < count; i++) {
-				int ptr = parentState + 1 + i * 2; // transitions start + i-th transition offset
-				if(m.data[ptr + 1] == state) {
-					m.data[ptr + 1] = newState;
+				long ptr = nextPtr(parentState, count, i);
+				if(ptr(ptr) == state && isPointer(data.get(labelPtr(parentState, count, i)))) {
+					data.set(ptr, (int) newState);
 					break;
 				}
 			}
@@ -275,30 +606,42 @@ public class CompactIntTrie {
 		return newState;
 	}
 
-	public int findTransition(int state, int label) {
-		int count = m.data[state];
+	/**
+	 * Find position of the transition target
+	 * @return target position, -1 if the state has no transition on the label
+	 */
+	long findNextPtr(long state, int label) {
+		int count = data.get(state);
+
+		if(sorted && count >= binarySearchThreshold) {
+			int i = lowerBound(state, count, label);
+			return i < count && data.get(labelPtr(state, count, i)) == label? nextPtr(state, count, i) : -1;
+		}
 
 		for(int i = 0; i < count; i++) {
-			int ptr = state + 1 + i * 2; // transitions start + i-th transition offset
-			if(m.data[ptr] == label)
-				return m.data[ptr + 1];
+			if(data.get(labelPtr(state, count, i)) == label)
+				return nextPtr(state, count, i);
 		}
 
 		return -1;
 	}
 
-	public int trCount(int state) {
-	    return m.data[state];
+	public long findTransition(long state, int label) {
+		long p = findNextPtr(state, label);
+		return p == -1? -1 : ptr(p);
+	}
+
+	public int trCount(long state) {
+	    int count = data.get(state);
+	    return count == RESERVED? 0 : count;
     }
 
-    public int trLabel(int state, int index) {
-	    int ptr = state + 1 + index * 2;
-	    return m.data[ptr];
+    public int trLabel(long state, int index) {
+	    return data.get(labelPtr(state, data.get(state), index));
     }
 
-    public int trNext(int state, int index) {
-        int ptr = state + 1 + index * 2;
-        return m.data[ptr + 1];
+    public long trNext(long state, int index) {
+        return ptr(nextPtr(state, data.get(state), index));
     }
 
 	/**
@@ -309,15 +652,25 @@ public class CompactIntTrie {
 	 *
 	 * @param l word to add
 	 * @return last state id, or -1 if the word is a prefix of another word
+	 * @throws IllegalStateException if the trie is minimized or in payload mode
+	 * @throws UnsupportedOperationException if the trie is read-only
 	 *
 	 */
-	public int add(TIntList l) {
-		int state = start;
-		int prevState = -1;
+	public long add(TIntList l) {
+		checkWritable();
+
+		if(minimized)
+			throw new IllegalStateException("Trie is minimized, states are shared");
+
+		if(payload)
+			throw new IllegalStateException("Words of payload trie are added by put()");
+
+		long state = start;
+		long prevState = -1;
 		int pos = 0;
 
 		while(pos < l.size()) {
-			int next = findTransition(state, l.get(pos));
+			long next = findTransition(state, l.get(pos));
 			if(next == -1)
 				break;
 			prevState = state;
@@ -331,9 +684,9 @@ public class CompactIntTrie {
 		return addSuffix(l, pos, prevState, state);
 	}
 
-	protected int addSuffix(TIntList l, int pos, int prevState,int state) {
+	protected long addSuffix(TIntList l, int pos, long prevState, long state) {
 		while(pos < l.size()) {
-			int next = addState(pos != l.size() - 1);
+			long next = addState(pos != l.size() - 1);
 			state = addTransition(prevState, state, l.get(pos), next); // reduce relocations by reserving transitions for non-last states
 			prevState = state;
 			state = next;
@@ -345,7 +698,7 @@ public class CompactIntTrie {
 
 	public boolean contains(TIntList l) {
 		int pos = 0;
-		int state = start;
+		long state = start;
 
 		while(pos < l.size()) {
 			state = findTransition(state, l.get(pos));
@@ -357,63 +710,740 @@ public class CompactIntTrie {
 		return findTransition(state, 0) != -1;
 	}
 
+	/**
+	 * Add word with the final value, or replace the value of existing word.
+	 * The value is stored in the target slot of the final transition of the word,
+	 * so the trie must be in payload mode
+	 *
+	 * @param word word without the final label
+	 * @param value final value
+	 * @throws IllegalStateException if the trie isn't in payload mode or is minimized
+	 * @throws UnsupportedOperationException if the trie is read-only
+	 */
+	public void put(TIntList word, int value) {
+		checkWritable();
+		checkPayload();
+
+		if(minimized)
+			throw new IllegalStateException("Trie is minimized, states are shared");
+
+		long state = start;
+		long prevState = -1;
+		int pos = 0;
+
+		while(pos < word.size()) {
+			long next = findTransition(state, word.get(pos));
+			if(next == -1)
+				break;
+			prevState = state;
+			state = next;
+			pos++;
+		}
+
+		// all new states get the final transition or a child, so they are reserved
+		while(pos < word.size()) {
+			long next = addState(true);
+			state = addTransition(prevState, state, word.get(pos), next);
+			prevState = state;
+			state = next;
+			pos++;
+		}
+
+		long p = findNextPtr(state, 0);
+
+		if(p != -1) {
+			data.set(p, value);
+		} else {
+			addTransition(prevState, state, 0, value & ChunkAllocator.MAX_SIZE);
+		}
+	}
+
+	void checkPayload() {
+		if(!payload)
+			throw new IllegalStateException("Trie isn't in payload mode");
+	}
+
+	/**
+	 * Position of the final value slot of the word
+	 * @return slot position, -1 if the trie doesn't contain the word
+	 */
+	long valuePtr(TIntList word) {
+		long state = start;
+
+		for(int i = 0; i < word.size(); i++) {
+			state = findTransition(state, word.get(i));
+			if(state == -1)
+				return -1;
+		}
+
+		return findNextPtr(state, 0);
+	}
+
+	/**
+	 * Get the final value of the word in payload mode
+	 *
+	 * @param word word without the final label
+	 * @param missing value returned if the trie doesn't contain the word
+	 * @throws IllegalStateException if the trie isn't in payload mode
+	 */
+	public int get(TIntList word, int missing) {
+		checkPayload();
+		long p = valuePtr(word);
+		return p == -1? missing : data.get(p);
+	}
+
+	/**
+	 * Add word with long final value. The value is stored in the value arena of the trie,
+	 * the final slot holds its index. So the int and long values shouldn't be mixed in a trie
+	 *
+	 * @param word word without the final label
+	 * @param value final value
+	 * @throws IllegalStateException if the trie isn't in payload mode
+	 */
+	public void putLong(TIntList word, long value) {
+		checkWritable();
+		checkPayload();
+		long p = valuePtr(word);
+
+		if(p != -1) {
+			longValues.set(data.get(p), value);
+			return;
+		}
+
+		put(word, longValues.size());
+		longValues.add(value);
+	}
+
+	/**
+	 * Get the long final value of the word
+	 *
+	 * @param word word without the final label
+	 * @param missing value returned if the trie doesn't contain the word
+	 * @throws IllegalStateException if the trie isn't in payload mode
+	 */
+	public long getLong(TIntList word, long missing) {
+		checkPayload();
+		long p = valuePtr(word);
+		return p == -1? missing : longValues.get(data.get(p));
+	}
+
+	/**
+	 * Long value by its index in the value arena
+	 */
+	public long longValue(int index) {
+		return longValues.get(index);
+	}
+
+	/**
+	 * Cursor over the words of the trie in lexicographic order
+	 */
+	public CompactIntTrieCursor cursor() {
+		CompactIntTrieCursor c = new CompactIntTrieCursor(this);
+		c.reset();
+		return c;
+	}
+
+	/**
+	 * Iterator over the words with given prefix in lexicographic order.
+	 * Each word is returned as a fresh array
+	 *
+	 * @param prefix word prefix
+	 */
+	public Iterator<int[]> words(TIntList prefix) {
+		return Spliterators.iterator(spliterator(prefix));
+	}
+
+	public Iterator<int[]> words() {
+		return words(new TIntArrayList());
+	}
+
+	/**
+	 * Spliterator over the words with given prefix. It is split on the trie branches
+	 *
+	 * @param prefix word prefix
+	 */
+	public Spliterator<int[]> spliterator(TIntList prefix) {
+		long state = start;
+
+		for(int i = 0; i < prefix.size() && state != -1; i++) {
+			state = findTransition(state, prefix.get(i));
+		}
+
+		if(state == -1)
+			return Spliterators.emptySpliterator();
+
+		return new CompactIntTrieSpliterator(this, state, new TIntArrayList(prefix));
+	}
+
+	/**
+	 * Stream of the words with given prefix
+	 *
+	 * @param prefix word prefix
+	 * @param parallel parallel stream flag
+	 */
+	public Stream<int[]> stream(TIntList prefix, boolean parallel) {
+		return StreamSupport.stream(spliterator(prefix), parallel);
+	}
+
 	public int size() {
 		return stateCount;
 	}
 
-	public int dataSize() {
-		return m.data.length;
+	public long dataSize() {
+		return data.capacity();
 	}
 
-	public int usedSize() {
-	    return m.data.length - m.unallocPtr;
+	public long usedSize() {
+	    return data.capacity() - m.unallocPtr;
     }
 
-    public int start() {
+    public long start() {
 	    return start;
     }
 
-    public void sortStateTransitions(int state, IntComparator c) {
-        GenericSorting.quickSort(0, m.data[state], new IntComparator() {
+    public ChunkAllocator allocator() {
+        return m;
+    }
+
+    /**
+     * Number of state relocations caused by transition additions
+     */
+    public long relocations() {
+        return relocations;
+    }
+
+    /**
+     * Number of performed compactions
+     */
+    public int compactions() {
+        return compactions;
+    }
+
+    /**
+     * Collect the states reachable from the start state. The traversal doesn't
+     * write to the data, so it works on read-only and concurrently read tries
+     *
+     * @return states in address order
+     */
+    TLongArrayList collectStates() {
+        TLongArrayList states = new TLongArrayList();
+        TLongArrayList stack = new TLongArrayList();
+        TLongHashSet visited = new TLongHashSet();
+        stack.add(start);
+        visited.add(start);
+
+        while(!stack.isEmpty()) {
+            long state = stack.removeAt(stack.size() - 1);
+            states.add(state);
+            int count = trCount(state);
+
+            for(int i = 0; i < count; i++) {
+                if(!isPointer(data.get(labelPtr(state, count, i))))
+                    continue;
+
+                long next = ptr(nextPtr(state, count, i));
+
+                if(visited.add(next))
+                    stack.add(next);
+            }
+        }
+
+        states.sort();
+        return states;
+    }
+
+    /**
+     * Stop-the-world compaction. The states reachable from the start state are slided to the
+     * beginning of the data in address order, the transitions are rewritten to the new addresses,
+     * the free chunks are dropped and the data is trimmed.
+     *
+     * The state addresses change, so the state ids obtained before the compaction
+     * (e.g. the results of add()) become invalid.
+     *
+     * @return number of reclaimed ints
+     */
+    public long compact() {
+        checkWritable();
+        // new addresses in address order, so the chunks are moved only to the left
+        TLongArrayList oldAddr = collectStates();
+        int n = oldAddr.size();
+        long[] newAddr = new long[n];
+        long ptr = 0;
+
+        for(int i = 0; i < n; i++) {
+            long state = oldAddr.get(i);
+            int size = m.bucketSize(stateBucket(state));
+            newAddr[i] = ptr;
+            data.copy(state, ptr, size);
+            ptr += size;
+        }
+
+        for(int i = 0; i < n; i++) {
+            long state = newAddr[i];
+
+            int count = trCount(state);
+
+            for(int j = 0; j < count; j++) {
+                if(!isPointer(trLabel(state, j)))
+                    continue;
+
+                long p = nextPtr(state, count, j);
+                data.set(p, (int) newAddr[oldAddr.binarySearch(ptr(p))]);
+            }
+        }
+
+        long reclaimed = m.unallocPtr - ptr;
+        start = newAddr[oldAddr.binarySearch(start)];
+        stateCount = n;
+        m.reset(ptr);
+        m.trim(ptr >> 3);
+        compactions++;
+
+        return reclaimed;
+    }
+
+    /**
+     * Write the trie snapshot to the file. The file format is:
+     * <ul>
+     * <li> header: magic, flags, state count, start (hi, lo), data size (hi, lo)
+     * <li> data up to the allocation pointer
+     * <li> in payload mode: long value count (hi, lo) and the values (hi, lo)
+     * </ul>
+     * The free chunks are written as is, so the trie should be compacted before writing
+     *
+     * @param file target file
+     */
+    public void write(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            IntSectionWriter out = new IntSectionWriter(channel, 0);
+            int flags = (sorted? SORTED : 0) | (split? SPLIT : 0) | (payload? PAYLOAD : 0) | (minimized? MINIMIZED : 0);
+            long size = m.unallocPtr;
+
+            out.put(MAGIC);
+            out.put(flags);
+            out.put(stateCount);
+            out.put((int) (start >>> 32));
+            out.put((int) start);
+            out.put((int) (size >>> 32));
+            out.put((int) size);
+
+            for(long i = 0; i < size; i++) {
+                out.put(data.get(i));
+            }
+
+            if(payload) {
+                out.put(0);
+                out.put(longValues.size());
+
+                for(int i = 0; i < longValues.size(); i++) {
+                    long value = longValues.get(i);
+                    out.put((int) (value >>> 32));
+                    out.put((int) value);
+                }
+            }
+
+            out.flush();
+        }
+    }
+
+    static int[] readHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+
+        while(buf.hasRemaining()) {
+            if(channel.read(buf, buf.position()) < 0)
+                throw new IOException("Unexpected end of file");
+        }
+
+        buf.flip();
+        int[] header = new int[HEADER_SIZE / 4];
+        buf.asIntBuffer().get(header);
+
+        if(header[0] != MAGIC)
+            throw new IOException("Not a CompactIntTrie file: " + file);
+
+        return header;
+    }
+
+    static long readLong(int[] header, int index) {
+        return ((long) header[index] << 32) | (header[index + 1] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Read the long value arena of payload trie, it follows the data
+     */
+    static void readLongValues(FileChannel channel, CompactIntTrie trie, long size) throws IOException {
+        if(!trie.payload)
+            return;
+
+        long pos = HEADER_SIZE + 4 * size;
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        readFully(channel, buf, pos);
+        int count = (int) buf.getLong(0);
+        pos += 8;
+
+        buf = ByteBuffer.allocate(8 * count);
+        readFully(channel, buf, pos);
+        buf.flip();
+
+        for(int i = 0; i < count; i++) {
+            trie.longValues.add(buf.getLong());
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+        while(buf.hasRemaining()) {
+            if(channel.read(buf, pos + buf.position()) < 0)
+                throw new IOException("Unexpected end of file");
+        }
+    }
+
+    /**
+     * Read the trie written by {@link #write(Path)} to the heap storage.
+     * The free chunks of the written trie aren't reused
+     *
+     * @param file source file
+     */
+    public static CompactIntTrie read(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int[] header = readHeader(channel, file);
+            long size = readLong(header, 5);
+            HeapIntStorage storage = new HeapIntStorage(size);
+            ByteBuffer buf = ByteBuffer.allocateDirect(IntSectionWriter.DEFAULT_BUFFER_SIZE);
+            long pos = HEADER_SIZE;
+            long index = 0;
+
+            while(index < size) {
+                buf.clear();
+                buf.limit((int) Math.min(buf.capacity(), 4 * (size - index)));
+
+                while(buf.hasRemaining()) {
+                    int read = channel.read(buf, pos);
+                    if(read < 0)
+                        throw new IOException("Unexpected end of file");
+                    pos += read;
+                }
+
+                buf.flip();
+                IntBuffer ints = buf.asIntBuffer();
+
+                while(ints.hasRemaining()) {
+                    storage.set(index++, ints.get());
+                }
+            }
+
+            CompactIntTrie trie = new CompactIntTrie(storage, header[1], readLong(header, 3), header[2], size);
+            readLongValues(channel, trie, size);
+            return trie;
+        }
+    }
+
+    /**
+     * Map the trie written by {@link #write(Path)} read-only. The lookups work directly
+     * on the mapped file, so the loading time doesn't depend on the trie size.
+     * The long value arena of payload trie is read to the heap.
+     * The trie can't be modified, the modifying methods throw {@link UnsupportedOperationException}.
+     * The trie should be closed to release the file
+     *
+     * @param file source file
+     */
+    public static CompactIntTrie map(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int[] header = readHeader(channel, file);
+            long size = readLong(header, 5);
+            BufferIntStorage storage = BufferIntStorage.mapReadOnly(file, HEADER_SIZE, size);
+            CompactIntTrie trie = new CompactIntTrie(storage, header[1], readLong(header, 3), header[2], size);
+            trie.readOnly = true;
+
+            try {
+                readLongValues(channel, trie, size);
+            } catch(IOException e) {
+                storage.close();
+                throw e;
+            }
+
+            return trie;
+        }
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    void checkWritable() {
+        if(readOnly)
+            throw new UnsupportedOperationException("Trie is read-only");
+    }
+
+    /**
+     * Release the storage of the trie, e.g. the mapped file
+     */
+    @Override
+    public void close() throws IOException {
+        data.close();
+    }
+
+    /**
+     * Compact the trie if the fraction of free chunks exceeds the threshold.
+     * Should be called at points where no state ids are held by the caller
+     *
+     * @param threshold maximal allowed fragmentation, from 0 to 1
+     *
+     * @return true if the trie was compacted
+     */
+    public boolean compactIfFragmented(double threshold) {
+        if(m.fragmentation() <= threshold)
+            return false;
+
+        compact();
+        return true;
+    }
+
+    /**
+     * Minimize the trie into a DAFSA in place. The states are processed bottom-up:
+     * after the children of a state are replaced by their representatives, the state
+     * is looked up in a register by its (label, next) run. The duplicate states are redirected
+     * to the registered equivalent and their chunks are returned to the allocator.
+     *
+     * The transitions of each state are sorted by label, so the trie is switched to the sorted mode.
+     * Minimized trie shares states, so no words could be added after it. The freed chunks
+     * could be released by {@link #compact()}
+     *
+     * @return number of removed states
+     */
+    public int minimize() {
+        checkWritable();
+
+        if(minimized)
+            return 0;
+
+        StateRegister register = new StateRegister();
+        TLongArrayList stack = new TLongArrayList();
+        TIntArrayList index = new TIntArrayList();
+        int removed = 0;
+
+        stack.add(start);
+        index.add(0);
+
+        while(!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            long state = stack.get(top);
+            int i = index.get(top);
+
+            if(i < trCount(state)) {
+                index.set(top, i + 1);
+
+                if(isPointer(trLabel(state, i))) {
+                    stack.add(trNext(state, i));
+                    index.add(0);
+                }
+
+                continue;
+            }
+
+            stack.removeAt(top);
+            index.removeAt(top);
+
+            if(!sorted)
+                sortStateTransitions(state, NATURAL_ORDER);
+
+            long repr = register.intern(state);
+
+            if(repr != state) {
+                m.free(state, stateBucket(state));
+                stateCount--;
+                removed++;
+            }
+
+            if(top == 0) {
+                start = repr;
+            } else {
+                long parent = stack.get(top - 1);
+                int count = trCount(parent);
+                data.set(nextPtr(parent, count, index.get(top - 1) - 1), (int) repr);
+            }
+        }
+
+        sorted = true;
+        minimized = true;
+        return removed;
+    }
+
+    public boolean isMinimized() {
+        return minimized;
+    }
+
+    static final IntComparator NATURAL_ORDER = new IntComparator() {
+        @Override
+        public int compare(int a, int b) {
+            return Integer.compare(a, b);
+        }
+    };
+
+    /**
+     * Register of the minimized states. Open addressing hash table of state addresses,
+     * the states are compared by their transitions in the trie data
+     */
+    class StateRegister {
+        long[] table = new long[1024];
+        int size;
+
+        StateRegister() {
+            Arrays.fill(table, -1);
+        }
+
+        int hash(long state) {
+            int count = trCount(state);
+            int h = count;
+
+            for(int i = 0; i < count; i++) {
+                long next = trNext(state, i);
+                h = 31 * h + trLabel(state, i);
+                h = 31 * h + (int) (next ^ (next >>> 32));
+            }
+
+            return h * 0x9E3779B9;
+        }
+
+        boolean equalStates(long s1, long s2) {
+            int count = trCount(s1);
+
+            if(count != trCount(s2))
+                return false;
+
+            for(int i = 0; i < count; i++) {
+                if(trLabel(s1, i) != trLabel(s2, i) || trNext(s1, i) != trNext(s2, i))
+                    return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Find registered equivalent of the state or register it
+         */
+        long intern(long state) {
+            int mask = table.length - 1;
+            int slot = hash(state) & mask;
+
+            while(table[slot] != -1) {
+                if(equalStates(table[slot], state))
+                    return table[slot];
+
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = state;
+            size++;
+
+            if(size > (table.length >> 1))
+                rehash();
+
+            return state;
+        }
+
+        void rehash() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            Arrays.fill(table, -1);
+            int mask = table.length - 1;
+
+            for(long state : old) {
+                if(state == -1)
+                    continue;
+
+                int slot = hash(state) & mask;
+
+                while(table[slot] != -1) {
+                    slot = (slot + 1) & mask;
+                }
+
+                table[slot] = state;
+            }
+        }
+    }
+
+    /**
+     * Compute memory footprint of the trie. States are counted by their headers,
+     * the final marks (transitions on label 0) are counted as finals.
+     * Overhead is the memory of the allocator not occupied by reachable states:
+     * free chunks, reserved transitions and unallocated area. Its count is the number of such ints
+     */
+    public MemoryFootprint footprint() {
+        long transitions = 0;
+        long finals = 0;
+        TLongArrayList states = collectStates();
+
+        for(int i = 0; i < states.size(); i++) {
+            long state = states.get(i);
+
+            for(int j = 0; j < trCount(state); j++) {
+                if(trLabel(state, j) == 0) {
+                    finals++;
+                } else {
+                    transitions++;
+                }
+            }
+        }
+
+        long total = MemoryFootprint.object(MemoryFootprint.REFERENCE * 3 + 8) + 4 * data.capacity();
+        long stateBytes = 4L * states.size();
+        MemoryFootprint fp = new MemoryFootprint();
+        fp.add(MemoryFootprint.Part.STATES, states.size(), stateBytes);
+        fp.add(MemoryFootprint.Part.TRANSITIONS, transitions, 8 * transitions);
+        fp.add(MemoryFootprint.Part.FINALS, finals, 8 * finals);
+        long overhead = data.capacity() - states.size() - 2 * (transitions + finals);
+        fp.add(MemoryFootprint.Part.OVERHEAD, overhead, total - stateBytes - 8 * (transitions + finals));
+
+        return fp;
+    }
+
+    public void sortStateTransitions(long state, IntComparator c) {
+        checkWritable();
+        int count = trCount(state);
+
+        GenericSorting.quickSort(0, count, new IntComparator() {
             @Override
             public int compare(int i, int i1) {
-                return c.compare(m.data[state + 1 + i*2], m.data[state + 1 + i1*2]);
+                return c.compare(data.get(labelPtr(state, count, i)), data.get(labelPtr(state, count, i1)));
             }
         }, new Swapper() {
             @Override
             public void swap(int i, int i1) {
-                int tmp1 = m.data[state + 1 + i*2];
-                int tmp2 = m.data[state + 1 + i*2 + 1];
+                int tmp1 = data.get(labelPtr(state, count, i));
+                int tmp2 = data.get(nextPtr(state, count, i));
 
-                m.data[state + 1 + i*2] = m.data[state + 1 + i1*2];
-                m.data[state + 1 + i*2 + 1] = m.data[state + 1 + i1*2 + 1];
+                data.set(labelPtr(state, count, i), data.get(labelPtr(state, count, i1)));
+                data.set(nextPtr(state, count, i), data.get(nextPtr(state, count, i1)));
 
-                m.data[state + 1 + i1*2] = tmp1;
-                m.data[state + 1 + i1*2 + 1] = tmp2;
+                data.set(labelPtr(state, count, i1), tmp1);
+                data.set(nextPtr(state, count, i1), tmp2);
             }
         });
     }
 
+    /**
+     * Sort transitions of all states. As the order is arbitrary, the trie leaves the sorted mode
+     * @param c label comparator
+     */
     public void sortTransitions(IntComparator c) {
-        TIntHashSet states = new TIntHashSet();
-        TIntDeque q = new TIntDeque();
-        q.add(start);
-
-        while(!q.isEmpty()) {
-            int state = q.pop();
-
-            if(!states.add(state))
-                continue;
+        checkWritable();
+        TLongArrayList states = collectStates();
 
-            for(int i = 0; i < trCount(state); i++) {
-                q.add(trNext(state, i));
-            }
+        for(int i = 0; i < states.size(); i++) {
+            sortStateTransitions(states.get(i), c);
         }
 
-        TIntIterator it = states.iterator();
-        while(it.hasNext()) {
-            sortStateTransitions(it.next(), c);
-        }
+        sorted = false;
+    }
+
+    /**
+     * Sort transitions of all states by label and switch the trie to the sorted mode,
+     * so the following insertions keep the order and lookups use binary search
+     */
+    public void sortTransitions() {
+        sortTransitions(NATURAL_ORDER);
+        sorted = true;
     }
 
 }
@@ -0,0 +1,207 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Cursor over the words of {@link CompactIntTrie}. The word is the label path that ends
+ * with the final transition (label 0), the final label isn't included in the word.
+ * 
+ * The words are enumerated depth-first with explicit stack in lexicographic order of labels.
+ * If the trie isn't in the sorted mode, the transitions of each visited state are ordered
+ * on the fly into reusable per-depth buffers.
+ * 
+ * The word buffer is reused, so the cursor doesn't allocate after it has reached the maximal depth.
+ * The trie must not be modified during the enumeration.
+ * 
+ * Usage:
+ * <pre>
+ * CompactIntTrieCursor c = new CompactIntTrieCursor(trie);
+ * if(c.reset(prefix)) {
+ *     while(c.next()) {
+ *         process(c.word());
+ *     }
+ * }
+ * </pre>
+ *
+ */
+public class CompactIntTrieCursor {
+	final CompactIntTrie trie;
+	
+	long[] states = new long[16];
+	int[] pos = new int[16];
+	int[] end = new int[16];
+	int[][] orders = new int[16][];
+	int depth = -1;
+	long wordState;
+	int wordIndex;
+	
+	TIntArrayList word = new TIntArrayList();
+	
+	public CompactIntTrieCursor(CompactIntTrie trie) {
+		this.trie = trie;
+	}
+	
+	/**
+	 * Start enumeration of all words
+	 */
+	public void reset() {
+		word.resetQuick();
+		depth = -1;
+		push(trie.start(), 0, -1);
+	}
+	
+	/**
+	 * Start enumeration of the words with given prefix
+	 * 
+	 * @param prefix word prefix
+	 * @return false if there are no words with the prefix
+	 */
+	public boolean reset(TIntList prefix) {
+		long state = trie.start();
+		
+		for(int i = 0; i < prefix.size() && state != -1; i++) {
+			state = trie.findTransition(state, prefix.get(i));
+		}
+		
+		word.resetQuick();
+		depth = -1;
+		
+		if(state == -1)
+			return false;
+		
+		word.addAll(prefix);
+		push(state, 0, -1);
+		return true;
+	}
+	
+	/**
+	 * Start enumeration of a range of state transitions (in label order)
+	 * 
+	 * @param state state
+	 * @param prefix labels of the path to the state
+	 * @param from first transition
+	 * @param to last transition (exclusive)
+	 */
+	void reset(long state, int[] prefix, int from, int to) {
+		word.resetQuick();
+		word.add(prefix);
+		depth = -1;
+		push(state, from, to);
+	}
+	
+	/**
+	 * Push state on the stack
+	 * @param to end of transition range, -1 for all transitions
+	 */
+	void push(long state, int from, int to) {
+		depth++;
+		
+		if(depth == states.length) {
+			int size = depth * 2;
+			states = Arrays.copyOf(states, size);
+			pos = Arrays.copyOf(pos, size);
+			end = Arrays.copyOf(end, size);
+			orders = Arrays.copyOf(orders, size);
+		}
+		
+		int count = trie.trCount(state);
+		states[depth] = state;
+		pos[depth] = from;
+		end[depth] = to == -1? count : to;
+		
+		if(!trie.isSorted())
+			orders[depth] = order(trie, state, orders[depth]);
+	}
+	
+	/**
+	 * Compute transition indexes of the state in label order
+	 * 
+	 * @param buf reusable buffer, could be null
+	 */
+	static int[] order(CompactIntTrie trie, long state, int[] buf) {
+		int count = trie.trCount(state);
+		
+		if(buf == null || buf.length < count)
+			buf = new int[Math.max(count, 4)];
+		
+		// insertion sort, fan-out is usually small
+		for(int i = 0; i < count; i++) {
+			int label = trie.trLabel(state, i);
+			int j = i;
+			
+			while(j > 0 && trie.trLabel(state, buf[j - 1]) > label) {
+				buf[j] = buf[j - 1];
+				j--;
+			}
+			
+			buf[j] = i;
+		}
+		
+		return buf;
+	}
+	
+	/**
+	 * Advance to the next word
+	 * 
+	 * @return false if the enumeration is finished
+	 */
+	public boolean next() {
+		while(depth >= 0) {
+			if(pos[depth] == end[depth]) {
+				if(depth > 0)
+					word.removeAt(word.size() - 1);
+				
+				depth--;
+				continue;
+			}
+			
+			long state = states[depth];
+			int i = pos[depth]++;
+			int index = trie.isSorted()? i : orders[depth][i];
+			int label = trie.trLabel(state, index);
+			
+			if(label == 0) {
+				wordState = state;
+				wordIndex = index;
+				return true;
+			}
+			
+			word.add(label);
+			push(trie.trNext(state, index), 0, -1);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Current word. The buffer is modified by next()
+	 */
+	public TIntArrayList word() {
+		return word;
+	}
+	
+	/**
+	 * State of the current word end, the state with the final transition
+	 */
+	public long state() {
+		return wordState;
+	}
+	
+	/**
+	 * Final value of the current word in payload mode
+	 */
+	public int value() {
+		return (int) trie.trNext(wordState, wordIndex);
+	}
+	
+	/**
+	 * Long final value of the current word in payload mode
+	 */
+	public long longValue() {
+		return trie.longValue(value());
+	}
+
+}
@@ -0,0 +1,120 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the words of {@link CompactIntTrie}. It covers a range of transitions
+ * (in label order) of a state. The range is split in halves. A single transition is split 
+ * by descending into its target, so the splits follow the branches of the trie from the top.
+ * 
+ * The words are reported in lexicographic order as int arrays.
+ *
+ */
+public class CompactIntTrieSpliterator implements Spliterator<int[]> {
+	final CompactIntTrie trie;
+	
+	long state;
+	TIntArrayList prefix;
+	int from;
+	int to;
+	int[] order;
+	
+	CompactIntTrieCursor cursor;
+	
+	/**
+	 * @param trie trie
+	 * @param state start state
+	 * @param prefix labels of the path to the start state
+	 */
+	CompactIntTrieSpliterator(CompactIntTrie trie, long state, TIntArrayList prefix) {
+		this.trie = trie;
+		init(state, prefix, 0, trie.trCount(state));
+	}
+	
+	void init(long state, TIntArrayList prefix, int from, int to) {
+		this.state = state;
+		this.prefix = prefix;
+		this.from = from;
+		this.to = to;
+		this.order = trie.isSorted()? null : CompactIntTrieCursor.order(trie, state, null);
+	}
+	
+	int index(int i) {
+		return order == null? i : order[i];
+	}
+	
+	CompactIntTrieCursor cursor() {
+		if(cursor == null) {
+			cursor = new CompactIntTrieCursor(trie);
+			cursor.reset(state, prefix.toArray(), from, to);
+		}
+		
+		return cursor;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super int[]> action) {
+		CompactIntTrieCursor c = cursor();
+		
+		if(!c.next())
+			return false;
+		
+		action.accept(c.word().toArray());
+		return true;
+	}
+	
+	@Override
+	public void forEachRemaining(Consumer<? super int[]> action) {
+		CompactIntTrieCursor c = cursor();
+		
+		while(c.next()) {
+			action.accept(c.word().toArray());
+		}
+	}
+
+	@Override
+	public Spliterator<int[]> trySplit() {
+		if(cursor != null)
+			return null;
+		
+		// descend while there is a single non-final branch
+		while(to - from == 1) {
+			int index = index(from);
+			int label = trie.trLabel(state, index);
+			
+			if(label == 0)
+				return null;
+			
+			TIntArrayList p = new TIntArrayList(prefix);
+			p.add(label);
+			long next = trie.trNext(state, index);
+			init(next, p, 0, trie.trCount(next));
+		}
+		
+		if(to - from < 2)
+			return null;
+		
+		int mid = (from + to) >>> 1;
+		CompactIntTrieSpliterator prefixPart = new CompactIntTrieSpliterator(trie, state, prefix);
+		prefixPart.from = from;
+		prefixPart.to = mid;
+		prefixPart.order = order;
+		from = mid;
+		
+		return prefixPart;
+	}
+
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | DISTINCT | NONNULL;
+	}
+
+}
@@ -0,0 +1,244 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.TIntList;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link CompactIntTrie} that allows concurrent add() and contains() calls.
+ * 
+ * The states are guarded by striped locks, the stripe is selected by the state address.
+ * The trie is traversed by lock coupling: the lock of the child is acquired while the lock
+ * of its parent is held, and the start state has a virtual parent, the root lock. 
+ * As a state is relocated only while the locks of both the state and its parent are held,
+ * the pointer to a state is never read while the state is being relocated, and the parent
+ * pointer update is safe. 
+ * 
+ * The suffix of the new word is built privately and then linked to the trie by a single transition,
+ * so other threads never see partially built states.
+ * 
+ * As different states may share a stripe, the child locks are acquired by tryLock(). If it fails,
+ * all locks are released and the operation is restarted, so the striping can't cause deadlocks.
+ * The chunk allocation is synchronized on the allocator.
+ * 
+ * The storage must not move the data on growth, as the other threads access it concurrently.
+ * The default storage is {@link HeapIntStorage} with at least one full segment.
+ * compact(), minimize() and sorting aren't thread-safe, they must be called after the concurrent
+ * insertion is finished.
+ *
+ */
+public class ConcurrentCompactIntTrie extends CompactIntTrie {
+	public static final int DEFAULT_STRIPES = 1024;
+	
+	// result of the operation attempt that failed to acquire a lock
+	static final long RETRY = -2;
+	
+	final ReentrantLock rootLock = new ReentrantLock();
+	final ReentrantLock[] stripes;
+	final int stripeMask;
+	final AtomicLong restarts = new AtomicLong();
+	
+	public ConcurrentCompactIntTrie() {
+		this(new HeapIntStorage(1 << HeapIntStorage.DEFAULT_SEGMENT_BITS), 0, DEFAULT_STRIPES);
+	}
+	
+	/**
+	 * @param storage storage that doesn't move data on growth
+	 * @param flags layout flags, payload mode isn't supported
+	 * @param stripes number of lock stripes, rounded up to the power of two
+	 */
+	public ConcurrentCompactIntTrie(IntStorage storage, int flags, int stripes) {
+		super(checkStorage(storage), checkFlags(flags));
+		int n = Integer.highestOneBit(Math.max(stripes - 1, 1)) << 1;
+		this.stripes = new ReentrantLock[n];
+		this.stripeMask = n - 1;
+		
+		for(int i = 0; i < n; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+	}
+	
+	static int checkFlags(int flags) {
+		if((flags & PAYLOAD) != 0)
+			throw new IllegalArgumentException("Payload mode isn't supported by concurrent trie");
+		
+		return flags;
+	}
+	
+	static IntStorage checkStorage(IntStorage storage) {
+		// first segment of heap storage is reallocated on growth
+		if(storage instanceof HeapIntStorage)
+			storage.ensureCapacity(((HeapIntStorage) storage).segmentSize());
+		
+		return storage;
+	}
+	
+	ReentrantLock stripe(long state) {
+		long h = state * 0x9E3779B97F4A7C15L;
+		return stripes[(int) (h >>> 40) & stripeMask];
+	}
+	
+	@Override
+	protected long allocChunk(int bucket) {
+		synchronized(m) {
+			return super.allocChunk(bucket);
+		}
+	}
+	
+	@Override
+	protected void relocated(long state, int bucket) {
+		synchronized(m) {
+			super.relocated(state, bucket);
+		}
+	}
+	
+	@Override
+	public long addState(boolean reserve) {
+		synchronized(m) {
+			return super.addState(reserve);
+		}
+	}
+	
+	/**
+	 * Add word to the trie. Thread-safe
+	 * 
+	 * @param l word to add
+	 * @return last state id, or -1 if the word is a prefix of another word
+	 */
+	@Override
+	public long add(TIntList l) {
+		if(minimized)
+			throw new IllegalStateException("Trie is minimized, states are shared");
+		
+		while(true) {
+			long res = tryAdd(l);
+			
+			if(res != RETRY)
+				return res;
+			
+			restarts.incrementAndGet();
+			Thread.yield();
+		}
+	}
+	
+	long tryAdd(TIntList l) {
+		ReentrantLock parentLock = rootLock;
+		parentLock.lock();
+		
+		long prevState = -1;
+		long state = start;
+		ReentrantLock stateLock = stripe(state);
+		
+		if(!stateLock.tryLock()) {
+			parentLock.unlock();
+			return RETRY;
+		}
+		
+		try {
+			int pos = 0;
+			
+			while(pos < l.size()) {
+				long next = findTransition(state, l.get(pos));
+				
+				if(next == -1)
+					break;
+				
+				ReentrantLock nextLock = stripe(next);
+				
+				if(!nextLock.tryLock())
+					return RETRY;
+				
+				parentLock.unlock();
+				parentLock = stateLock;
+				stateLock = nextLock;
+				prevState = state;
+				state = next;
+				pos++;
+			}
+			
+			if(pos == l.size())
+				return -1; // l is a prefix of another word
+			
+			// build the suffix chain backwards, it is unreachable until linked
+			long last = addState(false);
+			long head = last;
+			
+			for(int i = l.size() - 1; i > pos; i--) {
+				long s = addState(true);
+				addTransition(-1, s, l.get(i), head);
+				head = s;
+			}
+			
+			addTransition(prevState, state, l.get(pos), head);
+			return last;
+		} finally {
+			stateLock.unlock();
+			parentLock.unlock();
+		}
+	}
+	
+	/**
+	 * Checks if the trie contains the word. Thread-safe
+	 */
+	@Override
+	public boolean contains(TIntList l) {
+		while(true) {
+			int res = tryContains(l);
+			
+			if(res >= 0)
+				return res == 1;
+			
+			restarts.incrementAndGet();
+			Thread.yield();
+		}
+	}
+	
+	/**
+	 * @return 1 if the trie contains the word, 0 if it doesn't, -1 to restart
+	 */
+	int tryContains(TIntList l) {
+		ReentrantLock parentLock = rootLock;
+		parentLock.lock();
+		
+		long state = start;
+		ReentrantLock stateLock = stripe(state);
+		
+		if(!stateLock.tryLock()) {
+			parentLock.unlock();
+			return -1;
+		}
+		
+		try {
+			for(int pos = 0; pos < l.size(); pos++) {
+				long next = findTransition(state, l.get(pos));
+				
+				if(next == -1)
+					return 0;
+				
+				ReentrantLock nextLock = stripe(next);
+				
+				if(!nextLock.tryLock())
+					return -1;
+				
+				parentLock.unlock();
+				parentLock = stateLock;
+				stateLock = nextLock;
+				state = next;
+			}
+			
+			return findTransition(state, 0) != -1? 1 : 0;
+		} finally {
+			stateLock.unlock();
+			parentLock.unlock();
+		}
+	}
+	
+	/**
+	 * Number of operation restarts caused by lock contention
+	 */
+	public long restarts() {
+		return restarts.get();
+	}
+
+}
@@ -0,0 +1,73 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.TIntList;
+
+/**
+ * Listener of the DAFSA construction events. Used for build-phase instrumentation
+ * of {@link IntDaciukAlgoIndexed}. The listener is optional, if it isn't set,
+ * the construction algorithm doesn't compute any metrics.
+ *
+ */
+public interface DaciukListener {
+	
+	/**
+	 * Called before the word is added by addMinWord()
+	 * 
+	 * @param word added word
+	 */
+	public void wordStart(TIntList word);
+	
+	/**
+	 * Called after the word is added by addMinWord()
+	 * 
+	 * @param word added word
+	 * @param commonPrefix length of the common prefix of the word and the automaton
+	 * @param nanos time spent on word addition in nanoseconds
+	 */
+	public void wordEnd(TIntList word, int commonPrefix, long nanos);
+	
+	/**
+	 * Confluence state (or a state after it on the common prefix path) is cloned
+	 * 
+	 * @param state source state
+	 * @param clone cloned state
+	 */
+	public void stateCloned(int state, int clone);
+	
+	/**
+	 * Equivalent state is found in the register, so the state is replaced
+	 * 
+	 * @param state replaced state
+	 * @param regState registered state
+	 */
+	public void registerHit(int state, int regState);
+	
+	/**
+	 * There is no equivalent state in the register, so the state is registered
+	 * 
+	 * @param state registered state
+	 */
+	public void registerMiss(int state);
+	
+	/**
+	 * Register lookup is done
+	 * 
+	 * @param probes number of state comparisons performed by the lookup
+	 */
+	public void registerProbe(int probes);
+	
+	/**
+	 * State is removed from the automaton and could be reused
+	 * 
+	 * @param state state number
+	 */
+	public void stateFreed(int state);
+	
+	/**
+	 * Previously freed state is reused as a new state
+	 * 
+	 * @param state state number
+	 */
+	public void stateReused(int state);
+
+}
@@ -0,0 +1,174 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.TIntList;
+
+/**
+ * DAFSA construction metrics: counters and histograms of word addition time
+ * and register probe lengths. Histograms are log2-bucketed: i-th bucket counts
+ * values in range [2^(i-1), 2^i), 0-th bucket counts zeros.
+ * 
+ * Usage: fsa.setListener(stats), add words, then inspect the stats.
+ *
+ */
+public class DaciukStats implements DaciukListener {
+	long words;
+	long totalLength;
+	long totalPrefix;
+	long clones;
+	long registerHits;
+	long registerMisses;
+	long lookups;
+	long totalProbes;
+	int maxProbes;
+	long freed;
+	long reused;
+	long totalNanos;
+	
+	long[] timeHistogram = new long[64];
+	long[] probeHistogram = new long[33];
+	
+	static int bucket(long value) {
+		return 64 - Long.numberOfLeadingZeros(value);
+	}
+
+	@Override
+	public void wordStart(TIntList word) {
+	}
+
+	@Override
+	public void wordEnd(TIntList word, int commonPrefix, long nanos) {
+		words++;
+		totalLength += word.size();
+		totalPrefix += commonPrefix;
+		totalNanos += nanos;
+		timeHistogram[bucket(nanos)]++;
+	}
+
+	@Override
+	public void stateCloned(int state, int clone) {
+		clones++;
+	}
+
+	@Override
+	public void registerHit(int state, int regState) {
+		registerHits++;
+	}
+
+	@Override
+	public void registerMiss(int state) {
+		registerMisses++;
+	}
+
+	@Override
+	public void registerProbe(int probes) {
+		lookups++;
+		totalProbes += probes;
+		maxProbes = Math.max(maxProbes, probes);
+		probeHistogram[bucket(probes)]++;
+	}
+
+	@Override
+	public void stateFreed(int state) {
+		freed++;
+	}
+
+	@Override
+	public void stateReused(int state) {
+		reused++;
+	}
+	
+	/**
+	 * Reset all metrics
+	 */
+	public void reset() {
+		words = totalLength = totalPrefix = totalNanos = 0;
+		clones = registerHits = registerMisses = 0;
+		lookups = totalProbes = maxProbes = 0;
+		freed = reused = 0;
+		timeHistogram = new long[timeHistogram.length];
+		probeHistogram = new long[probeHistogram.length];
+	}
+	
+	public long words() {
+		return words;
+	}
+	
+	public long clones() {
+		return clones;
+	}
+	
+	public long registerHits() {
+		return registerHits;
+	}
+	
+	public long registerMisses() {
+		return registerMisses;
+	}
+	
+	public long freed() {
+		return freed;
+	}
+	
+	public long reused() {
+		return reused;
+	}
+	
+	public int maxProbes() {
+		return maxProbes;
+	}
+	
+	public long totalNanos() {
+		return totalNanos;
+	}
+	
+	public double averageWordLength() {
+		return words == 0? 0 : (double) totalLength / words;
+	}
+	
+	public double averageCommonPrefix() {
+		return words == 0? 0 : (double) totalPrefix / words;
+	}
+	
+	public double averageProbes() {
+		return lookups == 0? 0 : (double) totalProbes / lookups;
+	}
+	
+	/**
+	 * Histogram of word addition time in nanoseconds
+	 */
+	public long[] timeHistogram() {
+		return timeHistogram;
+	}
+	
+	/**
+	 * Histogram of register probe lengths
+	 */
+	public long[] probeHistogram() {
+		return probeHistogram;
+	}
+	
+	static String histogram(long[] h) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < h.length; i++) {
+			if(h[i] == 0)
+				continue;
+			
+			if(sb.length() > 0)
+				sb.append(", ");
+			
+			sb.append(i == 0? 0 : 1L << (i - 1)).append("+: ").append(h[i]);
+		}
+		
+		return sb.toString();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("words=%d, avgLength=%.2f, avgCommonPrefix=%.2f, clones=%d, registerHits=%d, registerMisses=%d, "
+				+ "avgProbes=%.2f, maxProbes=%d, freed=%d, reused=%d, totalMs=%d%ntime(ns): {%s}%nprobes: {%s}", 
+				words, averageWordLength(), averageCommonPrefix(), clones, registerHits, registerMisses,
+				averageProbes(), maxProbes, freed, reused, totalNanos / 1000000, 
+				histogram(timeHistogram), histogram(probeHistogram));
+	}
+
+}
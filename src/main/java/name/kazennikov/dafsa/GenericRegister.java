@@ -17,6 +17,10 @@ public class GenericRegister<E> {
 		m.put(node, node);
 	}
 
+	public int size() {
+		return m.size();
+	}
+
 	public void remove(E node) {
 		E regNode = m.get(node);
 
@@ -0,0 +1,139 @@
+package name.kazennikov.dafsa;
+
+import java.util.Arrays;
+
+/**
+ * Heap storage of int arrays segments. The first segment grows by reallocation
+ * until it reaches the segment size, so small storages don't waste memory.
+ * Then the storage grows by adding full segments without copying.
+ *
+ */
+public class HeapIntStorage implements IntStorage {
+	public static final int DEFAULT_SEGMENT_BITS = 20; // 4 MB segments
+	
+	final int segmentBits;
+	final int segmentMask;
+	int[][] segments;
+	long capacity;
+	
+	/**
+	 * @param capacity initial capacity
+	 * @param segmentBits log2 of segment size in ints
+	 */
+	public HeapIntStorage(long capacity, int segmentBits) {
+		this.segmentBits = segmentBits;
+		this.segmentMask = (1 << segmentBits) - 1;
+		segments = new int[][] {new int[(int) Math.min(Math.max(capacity, 16), 1 << segmentBits)]};
+		this.capacity = segments[0].length;
+		ensureCapacity(capacity);
+	}
+	
+	public HeapIntStorage(long capacity) {
+		this(capacity, DEFAULT_SEGMENT_BITS);
+	}
+
+	@Override
+	public int get(long index) {
+		return segments[(int) (index >>> segmentBits)][(int) index & segmentMask];
+	}
+
+	@Override
+	public void set(long index, int value) {
+		segments[(int) (index >>> segmentBits)][(int) index & segmentMask] = value;
+	}
+
+	@Override
+	public void copy(long src, long dest, long length) {
+		// fast path: both ranges are in the same segment
+		if(((src ^ (src + length - 1)) >>> segmentBits) == 0 && ((dest ^ (dest + length - 1)) >>> segmentBits) == 0
+				&& (src >>> segmentBits) == (dest >>> segmentBits)) {
+			int[] segment = segments[(int) (src >>> segmentBits)];
+			System.arraycopy(segment, (int) src & segmentMask, segment, (int) dest & segmentMask, (int) length);
+			return;
+		}
+		
+		if(dest < src) {
+			for(long i = 0; i < length; i++) {
+				set(dest + i, get(src + i));
+			}
+		} else {
+			for(long i = length - 1; i >= 0; i--) {
+				set(dest + i, get(src + i));
+			}
+		}
+	}
+
+	/**
+	 * Segment size in ints. The data of a storage with at least one full segment is never moved
+	 */
+	public int segmentSize() {
+		return 1 << segmentBits;
+	}
+
+	@Override
+	public long capacity() {
+		return capacity;
+	}
+
+	@Override
+	public void ensureCapacity(long capacity) {
+		if(capacity <= this.capacity)
+			return;
+		
+		int segmentSize = 1 << segmentBits;
+		
+		// grow the first segment
+		if(segments.length == 1 && segments[0].length < segmentSize) {
+			long size = segments[0].length;
+			
+			while(size < capacity && size < segmentSize) {
+				size += size >> 1;
+			}
+			
+			segments[0] = Arrays.copyOf(segments[0], (int) Math.min(size, segmentSize));
+			this.capacity = segments[0].length;
+		}
+		
+		if(capacity <= this.capacity)
+			return;
+		
+		int count = (int) ((capacity + segmentMask) >>> segmentBits);
+		int oldCount = segments.length;
+		segments = Arrays.copyOf(segments, count);
+		
+		for(int i = oldCount; i < count; i++) {
+			segments[i] = new int[segmentSize];
+		}
+		
+		this.capacity = (long) count << segmentBits;
+	}
+
+	@Override
+	public void trim(long capacity) {
+		int count = (int) Math.max(1, (capacity + segmentMask) >>> segmentBits);
+		
+		if(count == 1) {
+			int size = (int) Math.max(capacity, 16);
+			
+			if(size < segments[0].length)
+				segments = new int[][] {Arrays.copyOf(segments[0], size)};
+			else if(segments.length > 1)
+				segments = new int[][] {segments[0]};
+			
+			this.capacity = segments[0].length;
+			return;
+		}
+		
+		if(count < segments.length) {
+			segments = Arrays.copyOf(segments, count);
+			this.capacity = (long) count << segmentBits;
+		}
+	}
+
+	@Override
+	public void close() {
+		segments = new int[][] {new int[16]};
+		capacity = 16;
+	}
+
+}
@@ -1,9 +1,61 @@
 package name.kazennikov.dafsa;
 
 import gnu.trove.list.array.TByteArrayList;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
 import name.kazennikov.fsa.IntFSABooleanEventHandler;
+import name.kazennikov.fsa.MemoryFootprint;
+import name.kazennikov.fsa.walk.WalkFSABoolean;
 
 public class IntDAFSABoolean extends AbstractIntDAFSA {
+	
+	/**
+	 * Builds DAFSA from the event stream. The stream is expected to be minimal
+	 * with the start state numbered 0 (as emitted by DAFSAs and product operations).
+	 * The resulting DAFSA could be extended further by addMinWord()
+	 */
+	public static class Builder implements IntFSABooleanEventHandler {
+		IntDAFSABoolean fsa = new IntDAFSABoolean();
+		boolean isFinal;
+		int state;
+
+		@Override
+		public void startState(int state) {
+			fsa.ensureState(state);
+			this.state = state;
+		}
+
+		@Override
+		public void setFinal() {
+			fsa.finals.set(state, isFinal? (byte)1 : (byte)0);
+			fsa.states.get(state).validHashCode = false;
+		}
+
+		@Override
+		public void addTransition(int label, int destState) {
+			fsa.ensureState(destState);
+			fsa.setNext(state, label, destState);
+		}
+
+		@Override
+		public void endState() {
+		}
+
+		@Override
+		public void setFinalValue(boolean finalValue) {
+			isFinal = finalValue;
+		}
+		
+		public IntDAFSABoolean build() {
+			fsa.registerAll();
+			return fsa;
+		}
+	}
+	
 	TByteArrayList finals;
 	
 	@Override
@@ -61,14 +113,44 @@ public class IntDAFSABoolean extends AbstractIntDAFSA {
 		return finals.get(state) != 0;
 	}
 	
+	@Override
+	protected void finalsFootprint(MemoryFootprint fp) {
+		super.finalsFootprint(fp);
+		fp.add(MemoryFootprint.Part.FINALS, 0, MemoryFootprint.troveList(finals.size(), 1));
+	}
+	
+	/**
+	 * Estimate footprint of the {@link WalkFSABoolean} compiled from this DAFSA
+	 */
+	public MemoryFootprint estimateWalker() {
+		return WalkFSABoolean.estimate(size(), transitionCount());
+	}
+	
+	/**
+	 * Emit current FSA state to events
+	 * @param events events object
+	 */
 	public void emit(IntFSABooleanEventHandler events) {
+		emit(events, false);
+	}
+	
+	/**
+	 * Emit current FSA state to events
+	 * 
+	 * @param events events object
+	 * @param release if true, each state is released right after it is emitted. This keeps
+	 * the peak memory close to one copy of the automaton, but the DAFSA becomes unusable
+	 */
+	public void emit(IntFSABooleanEventHandler events, boolean release) {
+		if(release)
+			releaseRegister();
+		
 		for(int i = 0; i < states.size(); i++) {
 			State s = states.get(i);
 			events.startState(i);
 			
 			events.setFinalValue(finals.get(i) == 1);
 			events.setFinal();
-
 			
 			for(int j = 0; j < s.next.size(); j++) {
 				int input = decodeLabel(s.next.get(j));
@@ -77,6 +159,27 @@ public class IntDAFSABoolean extends AbstractIntDAFSA {
 			}
 			
 			events.endState();
+			
+			if(release) {
+				releaseState(i);
+			}
+		}
+	}
+	
+	/**
+	 * Write walker file ({@link WalkFSABoolean#read(Path)}) directly from this DAFSA
+	 * 
+	 * @param file target file
+	 * @param release release states as they are written, see {@link #emit(IntFSABooleanEventHandler, boolean)}
+	 */
+	public void writeWalker(Path file, boolean release) throws IOException {
+		int transitionCount = transitionCount();
+		
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			WalkFSABoolean.FileBuilder builder = new WalkFSABoolean.FileBuilder(channel, states.size(), transitionCount);
+			emit(builder, release);
+			builder.finish();
 		}
 	}
 
@@ -2,9 +2,16 @@ package name.kazennikov.dafsa;
 
 import gnu.trove.set.hash.TIntHashSet;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 
+import name.kazennikov.fsa.IntFSAIntView;
 import name.kazennikov.fsa.IntFSAObjectEventHandler;
+import name.kazennikov.fsa.MemoryFootprint;
+import name.kazennikov.fsa.walk.WalkFSAInt;
 
 import com.google.common.base.Objects;
 
@@ -13,7 +20,50 @@ import com.google.common.base.Objects;
  * @author Anton Kazennikov
  *
  */
-public class IntDAFSAInt extends AbstractIntDAFSA {
+public class IntDAFSAInt extends AbstractIntDAFSA implements IntFSAIntView {
+	
+	/**
+	 * Builds DAFSA from the event stream. The stream is expected to be minimal
+	 * with the start state numbered 0 (as emitted by DAFSAs and product operations).
+	 * The resulting DAFSA could be extended further by addMinWord()
+	 */
+	public static class Builder implements IntFSAObjectEventHandler<int[]> {
+		IntDAFSAInt fsa = new IntDAFSAInt();
+		int[] values;
+		int state;
+
+		@Override
+		public void startState(int state) {
+			fsa.ensureState(state);
+			this.state = state;
+		}
+
+		@Override
+		public void setFinal() {
+			fsa.finals.get(state).addAll(values);
+			fsa.states.get(state).validHashCode = false;
+		}
+
+		@Override
+		public void addTransition(int label, int destState) {
+			fsa.ensureState(destState);
+			fsa.setNext(state, label, destState);
+		}
+
+		@Override
+		public void endState() {
+		}
+
+		@Override
+		public void setFinalValue(int[] object) {
+			this.values = object;
+		}
+		
+		public IntDAFSAInt build() {
+			fsa.registerAll();
+			return fsa;
+		}
+	}
 	
 	ArrayList<TIntHashSet> finals;
 	
@@ -76,9 +126,50 @@ public class IntDAFSAInt extends AbstractIntDAFSA {
 		return finals.get(state).contains(finalValue);
 	}
 	
+	@Override
+	protected void finalsFootprint(MemoryFootprint fp) {
+		long bytes = MemoryFootprint.arrayList(finals.size());
+		int count = 0;
+		
+		for(TIntHashSet f : finals) {
+			if(f == null)
+				continue;
+			
+			bytes += MemoryFootprint.troveHash(f, 4);
+			
+			if(!f.isEmpty())
+				count++;
+		}
+		
+		fp.add(MemoryFootprint.Part.FINALS, count, bytes);
+	}
+	
+	/**
+	 * Estimate footprint of the {@link WalkFSAInt} compiled from this DAFSA
+	 */
+	public MemoryFootprint estimateWalker() {
+		int finalStates = 0;
+		long valueCount = 0;
+		
+		for(int i = 0; i < states.size(); i++) {
+			if(states.get(i) == null || finals.get(i).isEmpty())
+				continue;
+			
+			finalStates++;
+			valueCount += finals.get(i).size();
+		}
+		
+		return WalkFSAInt.estimate(size(), transitionCount(), finalStates, valueCount);
+	}
+	
 	public TIntHashSet getFinals(int state) {
 		return finals.get(state);
 	}
+	
+	@Override
+	public int[] getFinalValues(int state) {
+		return finals.get(state).toArray();
+	}
 
 	@Override
 	public boolean isFinalState(int state) {
@@ -86,10 +177,24 @@ public class IntDAFSAInt extends AbstractIntDAFSA {
 	}
 	
 	/**
-	 * Emit current FSA state to events 
+	 * Emit current FSA state to events
 	 * @param events events object
 	 */
 	public void emit(IntFSAObjectEventHandler<int[]> events) {
+		emit(events, false);
+	}
+	
+	/**
+	 * Emit current FSA state to events
+	 * 
+	 * @param events events object
+	 * @param release if true, each state is released right after it is emitted. This keeps
+	 * the peak memory close to one copy of the automaton, but the DAFSA becomes unusable
+	 */
+	public void emit(IntFSAObjectEventHandler<int[]> events, boolean release) {
+		if(release)
+			releaseRegister();
+		
 		for(int i = 0; i < states.size(); i++) {
 			State s = states.get(i);
 			events.startState(i);
@@ -104,6 +209,28 @@ public class IntDAFSAInt extends AbstractIntDAFSA {
 			}
 			
 			events.endState();
+			
+			if(release) {
+				releaseState(i);
+				finals.set(i, null);
+			}
+		}
+	}
+	
+	/**
+	 * Write walker file ({@link WalkFSAInt#read(Path)}) directly from this DAFSA
+	 * 
+	 * @param file target file
+	 * @param release release states as they are written, see {@link #emit(IntFSAObjectEventHandler, boolean)}
+	 */
+	public void writeWalker(Path file, boolean release) throws IOException {
+		int transitionCount = transitionCount();
+		
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			WalkFSAInt.FileBuilder builder = new WalkFSAInt.FileBuilder(channel, states.size(), transitionCount);
+			emit(builder, release);
+			builder.finish();
 		}
 	}
 
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Set;
 
 import name.kazennikov.fsa.IntFSAObjectEventHandler;
+import name.kazennikov.fsa.MemoryFootprint;
 
 import com.google.common.base.Objects;
 
@@ -45,6 +46,24 @@ public class IntDAFSAObject<E> extends AbstractIntDAFSA {
 		return !finals.get(state).isEmpty();
 	}
 	
+	/**
+	 * Final value sets are counted without the values themselves
+	 */
+	@Override
+	protected void finalsFootprint(MemoryFootprint fp) {
+		long bytes = MemoryFootprint.arrayList(finals.size());
+		int count = 0;
+		
+		for(Set<E> f : finals) {
+			bytes += MemoryFootprint.object(MemoryFootprint.REFERENCE) + MemoryFootprint.hashMap(f.size());
+			
+			if(!f.isEmpty())
+				count++;
+		}
+		
+		fp.add(MemoryFootprint.Part.FINALS, count, bytes);
+	}
+	
 	E finalValue;
 	
 	
@@ -0,0 +1,322 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import name.kazennikov.fsa.Constants;
+import name.kazennikov.fsa.IntFSAView;
+
+/**
+ * Product construction over two acyclic deterministic automata. The product is traversed
+ * depth-first and its states are registered bottom-up in the {@link IntSuffixRegister},
+ * so the result is minimal without intermediate automaton and without replaying
+ * the words of the operands.
+ *
+ * A state of the product is a pair of operand states, where -1 (INVALID_STATE) means
+ * that the word prefix is absent in the operand. Each pair is processed only once.
+ *
+ * The final value handling is left to the subclasses. The result is emitted with
+ * the start state numbered 0.
+ *
+ */
+public abstract class IntDAFSAProduct {
+	
+	/**
+	 * Product operation
+	 */
+	public static enum Op {
+		/**
+		 * Words accepted by any of the operands
+		 */
+		UNION,
+		
+		/**
+		 * Words accepted by both operands
+		 */
+		INTERSECT,
+		
+		/**
+		 * Words accepted by the first operand and not accepted by the second one
+		 */
+		SUBTRACT;
+	}
+
+	/**
+	 * Value of the pair that produces empty language
+	 */
+	protected static final int DEAD = -2;
+
+	/**
+	 * Traversal frame for a pair of states
+	 */
+	static class Frame {
+		int a;
+		int b;
+		long key;
+		int pos;
+		TIntArrayList labels = new TIntArrayList();
+		TIntArrayList next = new TIntArrayList();
+
+		void reset(int a, int b, long key) {
+			this.a = a;
+			this.b = b;
+			this.key = key;
+			pos = 0;
+			labels.resetQuick();
+			next.resetQuick();
+		}
+	}
+
+	protected final IntFSAView a;
+	protected final IntFSAView b;
+
+	IntSuffixRegister register = new IntSuffixRegister();
+	int start = DEAD;
+	protected Op op = Op.UNION;
+
+	public IntDAFSAProduct(IntFSAView a, IntFSAView b) {
+		this.a = a;
+		this.b = b;
+	}
+
+	/**
+	 * Encode pair of states to the key
+	 */
+	static long pair(int a, int b) {
+		long k = a;
+		k <<= 32;
+		k += b & 0xFFFFFFFFL;
+		return k;
+	}
+
+	/**
+	 * Add outbound transition labels of the state to the list
+	 *
+	 * @param fsa source automaton
+	 * @param state source state, or -1
+	 * @param labels target label list
+	 */
+	static void addLabels(IntFSAView fsa, int state, TIntArrayList labels) {
+		if(state == Constants.INVALID_STATE)
+			return;
+
+		int count = fsa.getTransitionCount(state);
+		for(int i = 0; i < count; i++) {
+			labels.add(fsa.getTransitionInput(state, i));
+		}
+	}
+
+	/**
+	 * Sort and remove duplicate labels
+	 */
+	static void uniq(TIntArrayList labels) {
+		if(labels.size() < 2)
+			return;
+
+		labels.sort();
+		int j = 1;
+		for(int i = 1; i < labels.size(); i++) {
+			if(labels.get(i) != labels.get(j - 1)) {
+				labels.set(j++, labels.get(i));
+			}
+		}
+
+		labels.remove(j, labels.size() - j);
+	}
+
+	static int next(IntFSAView fsa, int state, int label) {
+		return state == Constants.INVALID_STATE? Constants.INVALID_STATE : fsa.getNext(state, label);
+	}
+
+	/**
+	 * Compute union of the operands
+	 */
+	public void union() {
+		compute(Op.UNION);
+	}
+	
+	/**
+	 * Compute intersection of the operands
+	 */
+	public void intersect() {
+		compute(Op.INTERSECT);
+	}
+	
+	/**
+	 * Compute difference of the operands
+	 */
+	public void subtract() {
+		compute(Op.SUBTRACT);
+	}
+	
+	/**
+	 * Checks if the word is accepted by the product with current operation
+	 * 
+	 * @param finalA true, if the word is accepted by the first operand
+	 * @param finalB true, if the word is accepted by the second operand
+	 */
+	protected boolean accepts(boolean finalA, boolean finalB) {
+		switch(op) {
+		case UNION:
+			return finalA || finalB;
+		case INTERSECT:
+			return finalA && finalB;
+		case SUBTRACT:
+			return finalA && !finalB;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Checks if state is final, -1 state isn't final
+	 * 
+	 * @param fsa automaton
+	 * @param state state number, or -1
+	 */
+	static boolean isFinal(IntFSAView fsa, int state) {
+		return state != Constants.INVALID_STATE && fsa.isFinalState(state);
+	}
+
+	/**
+	 * Compute the product
+	 * 
+	 * @param op product operation
+	 */
+	void compute(Op op) {
+		this.op = op;
+		register.clear();
+		TLongIntHashMap memo = new TLongIntHashMap(1024, 0.5f, Long.MIN_VALUE, Constants.INVALID_STATE);
+		List<Frame> stack = new ArrayList<>();
+		int depth = 0;
+
+		depth = push(stack, depth, a.getStartState(), b.getStartState());
+
+		while(depth > 0) {
+			Frame f = stack.get(depth - 1);
+
+			if(f.pos < f.labels.size()) {
+				int label = f.labels.get(f.pos);
+				int nextA = next(a, f.a, label);
+				int nextB = next(b, f.b, label);
+				
+				// the word prefix isn't accepted by the second operand
+				if(op == Op.INTERSECT && nextB == Constants.INVALID_STATE) {
+					f.next.add(DEAD);
+					f.pos++;
+					continue;
+				}
+				
+				int res = memo.get(pair(nextA, nextB));
+
+				if(res == Constants.INVALID_STATE) {
+					depth = push(stack, depth, nextA, nextB);
+					continue;
+				}
+
+				f.next.add(res);
+				f.pos++;
+				continue;
+			}
+
+			int res = registerState(f);
+			memo.put(f.key, res);
+			depth--;
+
+			if(depth == 0) {
+				start = res;
+			} else {
+				Frame parent = stack.get(depth - 1);
+				parent.next.add(res);
+				parent.pos++;
+			}
+		}
+	}
+
+	int push(List<Frame> stack, int depth, int stateA, int stateB) {
+		if(stack.size() == depth) {
+			stack.add(new Frame());
+		}
+
+		Frame f = stack.get(depth);
+		f.reset(stateA, stateB, pair(stateA, stateB));
+		addLabels(a, stateA, f.labels);
+		
+		// only union could introduce labels of the second operand
+		if(op == Op.UNION)
+			addLabels(b, stateB, f.labels);
+		
+		uniq(f.labels);
+
+		return depth + 1;
+	}
+
+	/**
+	 * Register state of the product from processed frame
+	 *
+	 * @return registered state, or DEAD if the state has empty language
+	 */
+	int registerState(Frame f) {
+		int finalKey = finalKey(f.a, f.b);
+		boolean live = finalKey != 0;
+
+		for(int i = 0; i < f.next.size(); i++) {
+			if(f.next.get(i) != DEAD) {
+				live = true;
+				break;
+			}
+		}
+
+		if(!live)
+			return DEAD;
+
+		register.begin(finalKey);
+
+		for(int i = 0; i < f.next.size(); i++) {
+			if(f.next.get(i) != DEAD) {
+				register.addTransition(f.labels.get(i), f.next.get(i));
+			}
+		}
+
+		return register.commit();
+	}
+
+	/**
+	 * Compute final value key of a product state
+	 *
+	 * @param stateA state of the first operand, or -1
+	 * @param stateB state of the second operand, or -1
+	 *
+	 * @return final key, 0 if product state isn't final
+	 */
+	protected abstract int finalKey(int stateA, int stateB);
+
+	/**
+	 * Number of states in the result
+	 */
+	public int size() {
+		return start == DEAD? 1 : register.size();
+	}
+
+	/**
+	 * Check if the result is empty (accepts no words)
+	 */
+	public boolean isEmpty() {
+		return start == DEAD;
+	}
+
+	/**
+	 * Map between register state numbers and emitted state numbers. The register numbers
+	 * states bottom-up, so the start state is the last one. The order is reversed
+	 * to make the start state first. The mapping is symmetric.
+	 *
+	 * @param state state number
+	 */
+	int emitNumber(int state) {
+		return register.size() - 1 - state;
+	}
+
+}
@@ -0,0 +1,96 @@
+package name.kazennikov.dafsa;
+
+import name.kazennikov.fsa.IntFSABooleanEventHandler;
+import name.kazennikov.fsa.IntFSAView;
+
+/**
+ * Product of two automata with boolean finality, like {@link IntDAFSABoolean} or
+ * {@link name.kazennikov.fsa.walk.WalkFSABoolean}
+ *
+ */
+public class IntDAFSAProductBoolean extends IntDAFSAProduct {
+
+	public IntDAFSAProductBoolean(IntFSAView a, IntFSAView b) {
+		super(a, b);
+	}
+
+	@Override
+	protected int finalKey(int stateA, int stateB) {
+		return accepts(isFinal(a, stateA), isFinal(b, stateB))? 1 : 0;
+	}
+
+	/**
+	 * Emit the result to events
+	 * @param events events object
+	 */
+	public void emit(IntFSABooleanEventHandler events) {
+		if(isEmpty()) {
+			events.startState(0);
+			events.setFinalValue(false);
+			events.setFinal();
+			events.endState();
+			return;
+		}
+
+		for(int i = 0; i < register.size(); i++) {
+			int state = emitNumber(i);
+			events.startState(i);
+
+			events.setFinalValue(register.finalKey(state) != 0);
+			events.setFinal();
+
+			int end = register.stateEnd(state);
+			for(int j = register.stateStart(state); j < end; j++) {
+				events.addTransition(register.label(j), emitNumber(register.dest(j)));
+			}
+
+			events.endState();
+		}
+	}
+
+	/**
+	 * Compute union of two automata into new DAFSA
+	 *
+	 * @param a first automaton
+	 * @param b second automaton
+	 *
+	 * @return minimal DAFSA that accepts words of both automata
+	 */
+	public static IntDAFSABoolean union(IntFSAView a, IntFSAView b) {
+		return compute(a, b, Op.UNION);
+	}
+	
+	/**
+	 * Compute intersection of two automata into new DAFSA
+	 *
+	 * @param a first automaton
+	 * @param b second automaton
+	 *
+	 * @return minimal DAFSA that accepts words accepted by both automata
+	 */
+	public static IntDAFSABoolean intersect(IntFSAView a, IntFSAView b) {
+		return compute(a, b, Op.INTERSECT);
+	}
+	
+	/**
+	 * Compute difference of two automata into new DAFSA
+	 *
+	 * @param a first automaton
+	 * @param b second automaton
+	 *
+	 * @return minimal DAFSA that accepts words of the first automaton
+	 * that aren't accepted by the second one
+	 */
+	public static IntDAFSABoolean subtract(IntFSAView a, IntFSAView b) {
+		return compute(a, b, Op.SUBTRACT);
+	}
+	
+	static IntDAFSABoolean compute(IntFSAView a, IntFSAView b, Op op) {
+		IntDAFSAProductBoolean p = new IntDAFSAProductBoolean(a, b);
+		p.compute(op);
+		IntDAFSABoolean.Builder builder = new IntDAFSABoolean.Builder();
+		p.emit(builder);
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,253 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import name.kazennikov.fsa.Constants;
+import name.kazennikov.fsa.IntFSAIntView;
+import name.kazennikov.fsa.IntFSAObjectEventHandler;
+
+/**
+ * Product of two automata with set of integers as final value, like {@link IntDAFSAInt} or
+ * {@link name.kazennikov.fsa.walk.WalkFSAInt}. The final sets of a word accepted by the product
+ * are merged by {@link Merger}, the default is set union.
+ *
+ * Distinct final sets are interned, so the register compares states by final set key
+ */
+public class IntDAFSAProductInt extends IntDAFSAProduct {
+	public static final int[] EMPTY = new int[0];
+	
+	/**
+	 * Final set merge policy
+	 */
+	public static interface Merger {
+		/**
+		 * Merge final sets of a word accepted by the product. If the resulting set is
+		 * empty, the word is excluded from the result
+		 * 
+		 * @param a final values of the first operand, empty if the word isn't accepted by it
+		 * @param b final values of the second operand, empty if the word isn't accepted by it
+		 * @param dest target list for the merged values
+		 */
+		public void merge(int[] a, int[] b, TIntArrayList dest);
+	}
+	
+	/**
+	 * Set union of final values
+	 */
+	public static final Merger UNION = new Merger() {
+		@Override
+		public void merge(int[] a, int[] b, TIntArrayList dest) {
+			dest.add(a);
+			dest.add(b);
+		}
+	};
+	
+	/**
+	 * Set intersection of final values
+	 */
+	public static final Merger INTERSECTION = new Merger() {
+		@Override
+		public void merge(int[] a, int[] b, TIntArrayList dest) {
+			for(int val : a) {
+				if(contains(b, val))
+					dest.add(val);
+			}
+		}
+	};
+	
+	/**
+	 * Final values of the first operand
+	 */
+	public static final Merger FIRST = new Merger() {
+		@Override
+		public void merge(int[] a, int[] b, TIntArrayList dest) {
+			dest.add(a);
+		}
+	};
+	
+	/**
+	 * Final values of the second operand
+	 */
+	public static final Merger SECOND = new Merger() {
+		@Override
+		public void merge(int[] a, int[] b, TIntArrayList dest) {
+			dest.add(b);
+		}
+	};
+	
+	/**
+	 * Final values of the first operand that are absent in the second operand
+	 */
+	public static final Merger DIFFERENCE = new Merger() {
+		@Override
+		public void merge(int[] a, int[] b, TIntArrayList dest) {
+			for(int val : a) {
+				if(!contains(b, val))
+					dest.add(val);
+			}
+		}
+	};
+	
+	static boolean contains(int[] values, int value) {
+		for(int val : values) {
+			if(val == value)
+				return true;
+		}
+		
+		return false;
+	}
+	
+	Merger merger = UNION;
+
+	// final set -> final key
+	TObjectIntHashMap<TIntArrayList> finalKeys = new TObjectIntHashMap<>();
+	// final key - 1 -> final set
+	List<int[]> finalValues = new ArrayList<>();
+	TIntArrayList buf = new TIntArrayList();
+
+	public IntDAFSAProductInt(IntFSAIntView a, IntFSAIntView b) {
+		super(a, b);
+	}
+	
+	public IntDAFSAProductInt(IntFSAIntView a, IntFSAIntView b, Merger merger) {
+		super(a, b);
+		this.merger = merger;
+	}
+	
+	public void setMerger(Merger merger) {
+		this.merger = merger;
+	}
+
+	static int[] finals(IntFSAIntView fsa, int state) {
+		if(state == Constants.INVALID_STATE)
+			return EMPTY;
+
+		return fsa.getFinalValues(state);
+	}
+
+	@Override
+	protected int finalKey(int stateA, int stateB) {
+		int[] finalsA = finals((IntFSAIntView) a, stateA);
+		int[] finalsB = finals((IntFSAIntView) b, stateB);
+		
+		if(!accepts(finalsA.length != 0, finalsB.length != 0))
+			return 0;
+		
+		buf.resetQuick();
+		merger.merge(finalsA, finalsB, buf);
+		uniq(buf);
+
+		return intern(buf);
+	}
+
+	/**
+	 * Get key of the final set
+	 *
+	 * @param values sorted final values
+	 * @return final key, 0 for the empty set
+	 */
+	int intern(TIntArrayList values) {
+		if(values.isEmpty())
+			return 0;
+
+		int key = finalKeys.get(values);
+
+		if(key == 0) {
+			finalValues.add(values.toArray());
+			key = finalValues.size();
+			finalKeys.put(new TIntArrayList(values), key);
+		}
+
+		return key;
+	}
+
+	/**
+	 * Get final values by final key
+	 *
+	 * @param finalKey final key
+	 */
+	public int[] finalValues(int finalKey) {
+		return finalKey == 0? EMPTY : finalValues.get(finalKey - 1);
+	}
+
+	/**
+	 * Emit the result to events
+	 * @param events events object
+	 */
+	public void emit(IntFSAObjectEventHandler<int[]> events) {
+		if(isEmpty()) {
+			events.startState(0);
+			events.setFinalValue(EMPTY);
+			events.setFinal();
+			events.endState();
+			return;
+		}
+
+		for(int i = 0; i < register.size(); i++) {
+			int state = emitNumber(i);
+			events.startState(i);
+
+			events.setFinalValue(finalValues(register.finalKey(state)));
+			events.setFinal();
+
+			int end = register.stateEnd(state);
+			for(int j = register.stateStart(state); j < end; j++) {
+				events.addTransition(register.label(j), emitNumber(register.dest(j)));
+			}
+
+			events.endState();
+		}
+	}
+
+	/**
+	 * Compute union of two automata into new DAFSA
+	 *
+	 * @param a first automaton
+	 * @param b second automaton
+	 *
+	 * @return minimal DAFSA that accepts words of both automata, the final sets
+	 * of words accepted by both automata are merged
+	 */
+	public static IntDAFSAInt union(IntFSAIntView a, IntFSAIntView b) {
+		return compute(a, b, Op.UNION, UNION);
+	}
+	
+	/**
+	 * Compute intersection of two automata into new DAFSA
+	 *
+	 * @param a first automaton
+	 * @param b second automaton
+	 * @param merger final set merge policy
+	 *
+	 * @return minimal DAFSA that accepts words accepted by both automata
+	 */
+	public static IntDAFSAInt intersect(IntFSAIntView a, IntFSAIntView b, Merger merger) {
+		return compute(a, b, Op.INTERSECT, merger);
+	}
+	
+	/**
+	 * Compute difference of two automata into new DAFSA
+	 *
+	 * @param a first automaton
+	 * @param b second automaton
+	 *
+	 * @return minimal DAFSA that accepts words of the first automaton
+	 * that aren't accepted by the second one, with final values of the first automaton
+	 */
+	public static IntDAFSAInt subtract(IntFSAIntView a, IntFSAIntView b) {
+		return compute(a, b, Op.SUBTRACT, FIRST);
+	}
+	
+	static IntDAFSAInt compute(IntFSAIntView a, IntFSAIntView b, Op op, Merger merger) {
+		IntDAFSAProductInt p = new IntDAFSAProductInt(a, b, merger);
+		p.compute(op);
+		IntDAFSAInt.Builder builder = new IntDAFSAInt.Builder();
+		p.emit(builder);
+		return builder.build();
+	}
+
+}
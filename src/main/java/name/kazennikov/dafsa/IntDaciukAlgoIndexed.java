@@ -92,7 +92,24 @@ public abstract class IntDaciukAlgoIndexed {
 	 * Start state number
 	 */
 	protected int startState;
-
+	
+	/**
+	 * Construction listener, null if instrumentation is disabled
+	 */
+	protected DaciukListener listener;
+	
+	/**
+	 * Set construction listener for build-phase instrumentation.
+	 * 
+	 * @param listener listener, or null to disable instrumentation
+	 */
+	public void setListener(DaciukListener listener) {
+		this.listener = listener;
+	}
+	
+	public DaciukListener getListener() {
+		return listener;
+	}
 
 	/**
 	 * Add state to register
@@ -206,7 +223,15 @@ public abstract class IntDaciukAlgoIndexed {
 		 * 4. add suffix
 		 * 5. minimize(replaceOrRegister from the last state toward the first)
 		 */
+		long startTime = 0;
+		
+		if(listener != null) {
+			listener.wordStart(seq);
+			startTime = System.nanoTime();
+		}
+		
 		TIntList stateList = commonPrefix(seq);
+		int prefixLength = stateList.size() - 1;
 		int confIdx = findConfluence(stateList);
 		
 		/* index of stop for replaceOrRegister a pointer to the state before modifications
@@ -224,6 +249,10 @@ public abstract class IntDaciukAlgoIndexed {
 			while(idx < stateList.size()) {
 				int prev = stateList.get(idx - 1);
 				int cloned = cloneState(stateList.get(idx));
+				
+				if(listener != null)
+					listener.stateCloned(stateList.get(idx), cloned);
+				
 				stateList.set(idx, cloned);
 				setNext(prev, seq.get(confIdx - 1), cloned);
 				idx++;
@@ -233,6 +262,9 @@ public abstract class IntDaciukAlgoIndexed {
 
 		addSuffix(stateList, stateList.get(stateList.size() - 1), seq, stateList.size() - 1, seq.size());
 		replaceOrRegister(seq, stateList, stopIdx);
+		
+		if(listener != null)
+			listener.wordEnd(seq, prefixLength, System.nanoTime() - startTime);
 	}
 
 
@@ -252,8 +284,14 @@ public abstract class IntDaciukAlgoIndexed {
 				if(stateIdx < stop)
 					return;
 			} else if(regNode == Constants.INVALID_STATE) {
+				if(listener != null)
+					listener.registerMiss(n);
+				
 				regAdd(n);
 			} else {
+				if(listener != null)
+					listener.registerHit(n, regNode);
+				
 				int in = input.get(inputIdx);
 				regRemove(stateList.get(stateIdx - 1));
 				setNext(stateList.get(stateIdx - 1), in, regNode);
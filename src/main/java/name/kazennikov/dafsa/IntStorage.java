@@ -0,0 +1,50 @@
+package name.kazennikov.dafsa;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Long-addressed int memory for chunked data structures (e.g. {@link CompactIntTrie}).
+ * Implementations store the data by fixed size segments, so the growth doesn't copy
+ * the existing data and the capacity isn't limited by the maximal Java array size.
+ *
+ */
+public interface IntStorage extends Closeable {
+	
+	public int get(long index);
+	
+	public void set(long index, int value);
+	
+	/**
+	 * Copy data inside the storage. The ranges may overlap
+	 * 
+	 * @param src source index
+	 * @param dest destination index
+	 * @param length number of ints to copy
+	 */
+	public void copy(long src, long dest, long length);
+	
+	/**
+	 * Number of ints that could be addressed without growth
+	 */
+	public long capacity();
+	
+	/**
+	 * Ensure that the storage could address given number of ints
+	 * 
+	 * @param capacity required capacity
+	 */
+	public void ensureCapacity(long capacity);
+	
+	/**
+	 * Release the memory above given capacity. The resulting capacity could be larger
+	 * due to segment granularity
+	 * 
+	 * @param capacity required capacity
+	 */
+	public void trim(long capacity);
+	
+	@Override
+	public void close() throws IOException;
+
+}
@@ -0,0 +1,176 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.array.TIntArrayList;
+import name.kazennikov.fsa.Constants;
+
+/**
+ * Register of finished (frozen) states for bottom-up construction of minimal
+ * acyclic automata. A state is added to the register only after all its destination
+ * states are registered, so two states are equivalent iff they have equal final values
+ * and equal transition tables. Thus equivalent states are merged on the fly and the
+ * resulting automaton is minimal.
+ *
+ * States are stored in flat transition table (like in walkers). A state is built
+ * by calling begin(), then addTransition() for each transition in ascending label order,
+ * and commit() which returns either number of equivalent registered state or the number
+ * of the new state.
+ *
+ * The final value is represented by an int key, 0 means that state isn't final.
+ * The interpretation of the keys is left to the caller.
+ *
+ */
+public class IntSuffixRegister {
+
+	TIntArrayList finals = new TIntArrayList();
+	TIntArrayList stateStart = new TIntArrayList();
+	TIntArrayList labels = new TIntArrayList();
+	TIntArrayList dest = new TIntArrayList();
+	// cached state hash codes
+	TIntArrayList hashes = new TIntArrayList();
+
+	/**
+	 * Register that compares states by its content
+	 */
+	class Register extends IntRegister {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public int hash(int state) {
+			return hashes.get(state);
+		}
+
+		@Override
+		public boolean equals(int state1, int state2) {
+			if(state1 == state2)
+				return true;
+
+			if(finals.get(state1) != finals.get(state2))
+				return false;
+
+			int start1 = stateStart.get(state1);
+			int start2 = stateStart.get(state2);
+			int count = stateEnd(state1) - start1;
+
+			if(count != stateEnd(state2) - start2)
+				return false;
+
+			for(int i = 0; i < count; i++) {
+				if(labels.get(start1 + i) != labels.get(start2 + i))
+					return false;
+
+				if(dest.get(start1 + i) != dest.get(start2 + i))
+					return false;
+			}
+
+			return true;
+		}
+	}
+
+	Register register = new Register();
+
+	/**
+	 * Start building a new state
+	 *
+	 * @param finalKey final value key of the state, 0 - not final
+	 */
+	public void begin(int finalKey) {
+		stateStart.add(labels.size());
+		finals.add(finalKey);
+	}
+
+	/**
+	 * Add transition to the state being built. Transitions must be added in ascending label order
+	 *
+	 * @param label transition label
+	 * @param destState registered destination state
+	 */
+	public void addTransition(int label, int destState) {
+		labels.add(label);
+		dest.add(destState);
+	}
+
+	/**
+	 * Finish the state being built. If there is an equivalent state in the register,
+	 * the built state is discarded.
+	 *
+	 * @return number of the registered state equivalent to the built one
+	 */
+	public int commit() {
+		int state = stateStart.size() - 1;
+		hashes.add(computeHash(state));
+		int regState = register.get(state);
+
+		if(regState != Constants.INVALID_STATE) {
+			int start = stateStart.get(state);
+			labels.remove(start, labels.size() - start);
+			dest.remove(start, dest.size() - start);
+			stateStart.removeAt(state);
+			finals.removeAt(state);
+			hashes.removeAt(state);
+			return regState;
+		}
+
+		register.add(state);
+		return state;
+	}
+
+	int computeHash(int state) {
+		int result = finals.get(state);
+		int end = stateEnd(state);
+
+		for(int i = stateStart.get(state); i < end; i++) {
+			result = 31 * result + labels.get(i);
+			result = 31 * result + dest.get(i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Number of registered states
+	 */
+	public int size() {
+		return stateStart.size();
+	}
+
+	/**
+	 * Total number of transitions of registered states
+	 */
+	public int transitionCount() {
+		return labels.size();
+	}
+
+	public int finalKey(int state) {
+		return finals.get(state);
+	}
+
+	public int stateStart(int state) {
+		return stateStart.get(state);
+	}
+
+	public int stateEnd(int state) {
+		state++;
+		return state == stateStart.size()? labels.size() : stateStart.get(state);
+	}
+
+	public int label(int transitionIndex) {
+		return labels.get(transitionIndex);
+	}
+
+	public int dest(int transitionIndex) {
+		return dest.get(transitionIndex);
+	}
+
+	/**
+	 * Clear the register
+	 */
+	public void clear() {
+		finals.resetQuick();
+		stateStart.resetQuick();
+		labels.resetQuick();
+		dest.resetQuick();
+		hashes.resetQuick();
+		register.clear();
+	}
+
+}
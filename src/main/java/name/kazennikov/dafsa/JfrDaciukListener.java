@@ -0,0 +1,116 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.TIntList;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * DAFSA construction listener that records Java Flight Recorder events.
+ * Each addMinWord() call is recorded as an event with the per-word counters,
+ * so the construction could be profiled along with GC and allocation events.
+ * 
+ * The events are recorded only if enabled in the recording settings, 
+ * i.e. -XX:StartFlightRecording or JFR configuration.
+ * Requires JDK with jdk.jfr module (JDK 11+, 8u262+).
+ *
+ */
+public class JfrDaciukListener implements DaciukListener {
+	
+	@Name("name.kazennikov.dafsa.AddWord")
+	@Label("DAFSA Add Word")
+	@Category("DAFSA")
+	static class AddWordEvent extends Event {
+		@Label("Word Length")
+		int length;
+		
+		@Label("Common Prefix")
+		int commonPrefix;
+		
+		@Label("Cloned States")
+		int clones;
+		
+		@Label("Register Hits")
+		int registerHits;
+		
+		@Label("Register Misses")
+		int registerMisses;
+		
+		@Label("Register Probes")
+		int registerProbes;
+		
+		@Label("Freed States")
+		int freed;
+		
+		@Label("Reused States")
+		int reused;
+	}
+	
+	AddWordEvent event;
+	
+	@Override
+	public void wordStart(TIntList word) {
+		event = new AddWordEvent();
+		
+		if(!event.isEnabled()) {
+			event = null;
+			return;
+		}
+		
+		event.begin();
+	}
+
+	@Override
+	public void wordEnd(TIntList word, int commonPrefix, long nanos) {
+		if(event == null)
+			return;
+		
+		event.end();
+		
+		if(event.shouldCommit()) {
+			event.length = word.size();
+			event.commonPrefix = commonPrefix;
+			event.commit();
+		}
+		
+		event = null;
+	}
+
+	@Override
+	public void stateCloned(int state, int clone) {
+		if(event != null)
+			event.clones++;
+	}
+
+	@Override
+	public void registerHit(int state, int regState) {
+		if(event != null)
+			event.registerHits++;
+	}
+
+	@Override
+	public void registerMiss(int state) {
+		if(event != null)
+			event.registerMisses++;
+	}
+
+	@Override
+	public void registerProbe(int probes) {
+		if(event != null)
+			event.registerProbes += probes;
+	}
+
+	@Override
+	public void stateFreed(int state) {
+		if(event != null)
+			event.freed++;
+	}
+
+	@Override
+	public void stateReused(int state) {
+		if(event != null)
+			event.reused++;
+	}
+
+}
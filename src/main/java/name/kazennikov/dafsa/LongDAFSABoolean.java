@@ -0,0 +1,306 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import name.kazennikov.fsa.Constants;
+import name.kazennikov.fsa.LongFSABooleanEventHandler;
+
+/**
+ * DAFSA over long sequences with boolean finality, built by {@link LongDaciukAlgo}.
+ * The states are organized as in {@link AbstractIntDAFSA}: numbered states with
+ * the register of the equivalent states and the queue of free state numbers.
+ * 
+ * The DAFSA is compiled to the {@link name.kazennikov.fsa.walk.WalkFSALong} walker by emit()
+ * 
+ */
+public class LongDAFSABoolean extends LongDaciukAlgo {
+	
+	/**
+	 * DAFSA state. The transitions are unordered, as the state fan-out is usually small
+	 */
+	public class State {
+		TLongArrayList labels = new TLongArrayList(2);
+		TIntArrayList next = new TIntArrayList(2);
+		
+		int inbound;
+		int number;
+		boolean isFinal;
+		int hashCode;
+		boolean registered;
+		boolean validHashCode;
+		
+		public int getNumber() {
+			return number;
+		}
+		
+		int findIndex(long input) {
+			for(int i = 0; i != labels.size(); i++) {
+				if(labels.get(i) == input)
+					return i;
+			}
+			
+			return -1;
+		}
+		
+		public int getNext(long input) {
+			int index = findIndex(input);
+			return index == -1? Constants.INVALID_STATE : next.get(index);
+		}
+		
+		public void setNext(long input, int next) {
+			int index = findIndex(input);
+			
+			if(index != -1) {
+				states.get(this.next.get(index)).inbound--;
+			}
+			
+			if(next != Constants.INVALID_STATE) {
+				if(index == -1) {
+					labels.add(input);
+					this.next.add(next);
+				} else {
+					this.next.set(index, next);
+				}
+				
+				states.get(next).inbound++;
+			} else if(index != -1) {
+				labels.removeAt(index);
+				this.next.removeAt(index);
+			}
+			
+			validHashCode = false;
+		}
+		
+		int hc() {
+			int result = isFinal? 1 : 0;
+			
+			// order independent, as the transitions are unordered
+			for(int i = 0; i != labels.size(); i++) {
+				long label = labels.get(i);
+				result += (int) (label ^ (label >>> 32)) * 31 + next.get(i);
+			}
+			
+			return result;
+		}
+		
+		@Override
+		public int hashCode() {
+			if(!validHashCode) {
+				hashCode = hc();
+				validHashCode = true;
+			}
+			
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof State))
+				return false;
+			
+			State other = (State) obj;
+			
+			if(isFinal != other.isFinal || labels.size() != other.labels.size())
+				return false;
+			
+			for(int i = 0; i != labels.size(); i++) {
+				if(other.getNext(labels.get(i)) != next.get(i))
+					return false;
+			}
+			
+			return true;
+		}
+		
+		public void reset() {
+			for(int i = 0; i != next.size(); i++) {
+				states.get(next.get(i)).inbound--;
+			}
+			
+			labels.resetQuick();
+			next.resetQuick();
+			isFinal = false;
+			validHashCode = false;
+		}
+		
+		public State assign(State node) {
+			node.isFinal = isFinal;
+			node.validHashCode = false;
+			
+			for(int i = 0; i != labels.size(); i++) {
+				node.setNext(labels.get(i), next.get(i));
+			}
+			
+			return node;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("state=%d", number);
+		}
+	}
+	
+	GenericRegister<State> register = new GenericRegister<State>();
+	List<State> states = new ArrayList<State>();
+	PriorityQueue<State> free = new PriorityQueue<>(10, new Comparator<State>() {
+
+		@Override
+		public int compare(State s1, State s2) {
+			return s1.number - s2.number;
+		}
+	});
+	
+	public LongDAFSABoolean() {
+		startState = addState();
+	}
+
+	@Override
+	public int getNext(int state, long input) {
+		return states.get(state).getNext(input);
+	}
+
+	@Override
+	public boolean isConfluence(int state) {
+		return states.get(state).inbound > 1;
+	}
+
+	@Override
+	public int cloneState(int srcState) {
+		State src = states.get(srcState);
+		int clonedState = addState();
+		src.assign(states.get(clonedState));
+		return clonedState;
+	}
+
+	@Override
+	public int addState() {
+		if(!free.isEmpty())
+			return free.poll().getNumber();
+		
+		State s = new State();
+		s.number = states.size();
+		states.add(s);
+		
+		return s.number;
+	}
+
+	@Override
+	public boolean setNext(int src, long label, int dest) {
+		states.get(src).setNext(label, dest);
+		return false;
+	}
+
+	@Override
+	public void removeState(int state) {
+		State s = states.get(state);
+		s.reset();
+		free.add(s);
+	}
+
+	@Override
+	public boolean setFinal(int state) {
+		State s = states.get(state);
+		
+		if(s.isFinal)
+			return false;
+		
+		s.isFinal = true;
+		s.validHashCode = false;
+		return true;
+	}
+
+	@Override
+	public boolean isFinal(int state) {
+		return states.get(state).isFinal;
+	}
+
+	@Override
+	public void regAdd(int state) {
+		State s = states.get(state);
+		
+		if(s.registered)
+			return;
+		
+		s.registered = true;
+		register.add(s);
+	}
+
+	@Override
+	public int regGet(int state) {
+		State s = register.get(states.get(state));
+		return s == null? Constants.INVALID_STATE : s.getNumber();
+	}
+
+	@Override
+	public void regRemove(int state) {
+		State s = states.get(state);
+		
+		if(!s.registered)
+			return;
+		
+		s.registered = false;
+		register.remove(s);
+	}
+	
+	public int size() {
+		return states.size() - free.size();
+	}
+	
+	public int getStartState() {
+		return startState;
+	}
+	
+	public int getTransitionCount(int state) {
+		return states.get(state).labels.size();
+	}
+	
+	public long getTransitionInput(int state, int transitionIndex) {
+		return states.get(state).labels.get(transitionIndex);
+	}
+	
+	public int getTransitionNext(int state, int transitionIndex) {
+		return states.get(state).next.get(transitionIndex);
+	}
+	
+	public boolean isFinalState(int state) {
+		return states.get(state).isFinal;
+	}
+	
+	public int transitionCount() {
+		int count = 0;
+		
+		for(State s : states) {
+			count += s.labels.size();
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Emit current FSA state to events. The free states are emitted as empty non-final states
+	 * @param events events object
+	 */
+	public void emit(LongFSABooleanEventHandler events) {
+		for(int i = 0; i < states.size(); i++) {
+			State s = states.get(i);
+			events.startState(i);
+			
+			events.setFinalValue(s.isFinal);
+			events.setFinal();
+			
+			for(int j = 0; j < s.labels.size(); j++) {
+				events.addTransition(s.labels.get(j), s.next.get(j));
+			}
+			
+			events.endState();
+		}
+	}
+
+}
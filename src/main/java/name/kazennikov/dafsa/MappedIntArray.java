@@ -0,0 +1,128 @@
+package name.kazennikov.dafsa;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable int array backed by memory-mapped file. The file is mapped by fixed size
+ * segments, so the array could be addressed by long index and doesn't occupy heap.
+ *
+ * The array is intended for temporary data of the external construction algorithms,
+ * so it uses native byte order
+ */
+public class MappedIntArray implements Closeable {
+	public static final int DEFAULT_SEGMENT_BITS = 22; // 16 MB segments
+
+	final Path file;
+	final FileChannel channel;
+	final int segmentBits;
+	final int segmentMask;
+	final boolean deleteOnClose;
+
+	List<IntBuffer> segments = new ArrayList<>();
+	long size;
+
+	/**
+	 * Create new array. Existing file is truncated
+	 *
+	 * @param file backing file
+	 * @param segmentBits log2 of segment size in ints
+	 * @param deleteOnClose delete the backing file on close()
+	 */
+	public MappedIntArray(Path file, int segmentBits, boolean deleteOnClose) throws IOException {
+		this.file = file;
+		this.segmentBits = segmentBits;
+		this.segmentMask = (1 << segmentBits) - 1;
+		this.deleteOnClose = deleteOnClose;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	public MappedIntArray(Path file) throws IOException {
+		this(file, DEFAULT_SEGMENT_BITS, true);
+	}
+
+	/**
+	 * Ensure that array could hold given number of elements
+	 *
+	 * @param capacity number of elements
+	 */
+	public void ensureCapacity(long capacity) throws IOException {
+		long segmentSize = 1L << segmentBits;
+
+		while(((long) segments.size() << segmentBits) < capacity) {
+			long pos = ((long) segments.size() << segmentBits) * 4;
+			IntBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, pos, segmentSize * 4)
+					.order(ByteOrder.nativeOrder())
+					.asIntBuffer();
+			segments.add(segment);
+		}
+	}
+
+	public int get(long index) {
+		return segments.get((int) (index >>> segmentBits)).get((int) (index & segmentMask));
+	}
+
+	public void set(long index, int value) {
+		segments.get((int) (index >>> segmentBits)).put((int) (index & segmentMask), value);
+	}
+
+	/**
+	 * Append value to the end of the array
+	 *
+	 * @param value value
+	 * @return index of the value
+	 */
+	public long add(int value) throws IOException {
+		ensureCapacity(size + 1);
+		set(size, value);
+		return size++;
+	}
+
+	/**
+	 * Set size of the array. New elements are zeroed
+	 *
+	 * @param size new size
+	 */
+	public void resize(long size) throws IOException {
+		ensureCapacity(size);
+
+		for(long i = this.size; i < size; i++) {
+			set(i, 0);
+		}
+
+		this.size = size;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Truncate the array to zero size. Mapped area isn't released
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Closes the array. The mapped segments are released when they are garbage collected
+	 */
+	@Override
+	public void close() throws IOException {
+		segments.clear();
+		channel.close();
+
+		if(deleteOnClose)
+			Files.deleteIfExists(file);
+	}
+
+}
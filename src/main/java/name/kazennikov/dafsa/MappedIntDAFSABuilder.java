@@ -0,0 +1,286 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import name.kazennikov.fsa.IntFSABooleanEventHandler;
+import name.kazennikov.fsa.walk.WalkFSABoolean;
+
+/**
+ * External memory DAFSA construction from sorted input. Implements the Daciuk algorithm
+ * for sorted data: only the path of the last added word is kept on heap, the states
+ * that couldn't change anymore are registered in the {@link MappedIntSuffixRegister}.
+ * So the heap usage is bounded by the word length regardless of the input size.
+ *
+ * The words must be added in ascending lexicographic order of the labels. The result
+ * is a minimal DAFSA with boolean finality, it could be emitted to events
+ * or written directly to the {@link WalkFSABoolean} file.
+ *
+ */
+public class MappedIntDAFSABuilder implements Closeable {
+	MappedIntSuffixRegister register;
+
+	// path of the last word. i-th element is the state reached by first i labels
+	List<TIntArrayList> pathLabels = new ArrayList<>();
+	List<TIntArrayList> pathDest = new ArrayList<>();
+	TByteArrayList pathFinal = new TByteArrayList();
+
+	TIntArrayList lastWord = new TIntArrayList();
+	boolean first = true;
+	int start = -1;
+	long wordCount;
+
+	/**
+	 * @param dir working directory for the state store
+	 */
+	public MappedIntDAFSABuilder(Path dir) throws IOException {
+		register = new MappedIntSuffixRegister(dir);
+		pushState();
+	}
+
+	/**
+	 * Append fresh state to the path
+	 */
+	void pushState() {
+		int depth = pathFinal.size();
+
+		if(pathLabels.size() == depth) {
+			pathLabels.add(new TIntArrayList());
+			pathDest.add(new TIntArrayList());
+		}
+
+		pathLabels.get(depth).resetQuick();
+		pathDest.get(depth).resetQuick();
+		pathFinal.add((byte) 0);
+	}
+
+	/**
+	 * Register path states deeper than given depth. The last transition of each
+	 * path state points to the next path state and is resolved at this moment
+	 *
+	 * @param depth depth of the last state to keep on the path
+	 */
+	void freeze(int depth) throws IOException {
+		for(int d = pathFinal.size() - 1; d > depth; d--) {
+			int state = registerPathState(d);
+			TIntArrayList parentDest = pathDest.get(d - 1);
+			parentDest.set(parentDest.size() - 1, state);
+			pathFinal.removeAt(d);
+		}
+	}
+
+	int registerPathState(int depth) throws IOException {
+		TIntArrayList labels = pathLabels.get(depth);
+		TIntArrayList dest = pathDest.get(depth);
+
+		register.begin(pathFinal.get(depth));
+
+		for(int i = 0; i < labels.size(); i++) {
+			register.addTransition(labels.get(i), dest.get(i));
+		}
+
+		return register.commit();
+	}
+
+	/**
+	 * Add word to the DAFSA. Words must be added in ascending order, duplicates are ignored
+	 *
+	 * @param word word to add
+	 */
+	public void addMinWord(TIntList word) throws IOException {
+		if(start != -1)
+			throw new IllegalStateException("DAFSA is already finished");
+
+		int prefix = 0;
+		int max = Math.min(word.size(), lastWord.size());
+
+		while(prefix < max && word.get(prefix) == lastWord.get(prefix)) {
+			prefix++;
+		}
+
+		if(!first) {
+			if(prefix == word.size()) {
+				if(word.size() == lastWord.size())
+					return; // duplicate
+
+				throw new IllegalArgumentException("Input isn't sorted: " + word + " after " + lastWord);
+			}
+
+			if(prefix < lastWord.size() && word.get(prefix) < lastWord.get(prefix))
+				throw new IllegalArgumentException("Input isn't sorted: " + word + " after " + lastWord);
+		}
+
+		first = false;
+		freeze(prefix);
+
+		for(int i = prefix; i < word.size(); i++) {
+			pathLabels.get(i).add(word.get(i));
+			pathDest.get(i).add(-1); // resolved on freeze
+			pushState();
+		}
+
+		pathFinal.set(word.size(), (byte) 1);
+
+		lastWord.resetQuick();
+		lastWord.addAll(word);
+		wordCount++;
+	}
+
+	/**
+	 * Add words from the UTF-8 text file, one word per line.
+	 * Word labels are UTF-16 chars of the line, as in {@link TroveUtils#expand(TIntArrayList, CharSequence)},
+	 * so the lines must be sorted by UTF-16 code units (the {@link String#compareTo(String)} order).
+	 * It differs from the byte order of UTF-8 (and the code point order) if the file contains
+	 * both supplementary characters and characters from U+E000 to U+FFFF
+	 *
+	 * @param file source file
+	 */
+	public void addAll(Path file) throws IOException {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+		ByteBuffer in = ByteBuffer.allocateDirect(1 << 16);
+		CharBuffer out = CharBuffer.allocate(1 << 16);
+		TIntArrayList word = new TIntArrayList();
+		boolean eof = false;
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while(true) {
+				if(!eof)
+					eof = channel.read(in) < 0;
+
+				in.flip();
+				CoderResult res = decoder.decode(in, out, eof);
+
+				if(res.isError())
+					res.throwException();
+
+				in.compact();
+
+				// all input is decoded
+				boolean done = eof && res.isUnderflow();
+
+				if(done)
+					decoder.flush(out);
+
+				out.flip();
+
+				while(out.hasRemaining()) {
+					char ch = out.get();
+
+					if(ch == '\n') {
+						addLine(word);
+						word.resetQuick();
+					} else {
+						word.add(ch);
+					}
+				}
+
+				out.clear();
+
+				if(done)
+					break;
+			}
+
+			if(!word.isEmpty())
+				addLine(word);
+		}
+	}
+
+	void addLine(TIntArrayList word) throws IOException {
+		if(!word.isEmpty() && word.get(word.size() - 1) == '\r')
+			word.removeAt(word.size() - 1);
+
+		addMinWord(word);
+	}
+
+	/**
+	 * Finish the construction: register the remaining path states
+	 */
+	public void finish() throws IOException {
+		if(start != -1)
+			return;
+
+		freeze(0);
+		start = registerPathState(0);
+	}
+
+	/**
+	 * Number of states of the DAFSA. Valid after finish()
+	 */
+	public int size() {
+		return register.size();
+	}
+
+	/**
+	 * Number of added words
+	 */
+	public long wordCount() {
+		return wordCount;
+	}
+
+	/**
+	 * Emit the DAFSA to events. The states are registered bottom-up, so the start state
+	 * is the last one. The states are emitted in reverse order with the start state numbered 0
+	 *
+	 * @param events events object
+	 */
+	public void emit(IntFSABooleanEventHandler events) throws IOException {
+		finish();
+		int n = register.size();
+
+		for(int i = 0; i < n; i++) {
+			int state = n - 1 - i;
+			events.startState(i);
+			events.setFinalValue(register.finalKey(state) != 0);
+			events.setFinal();
+
+			int count = register.transitionCount(state);
+			for(int j = 0; j < count; j++) {
+				events.addTransition(register.label(state, j), n - 1 - register.dest(state, j));
+			}
+
+			events.endState();
+		}
+	}
+
+	/**
+	 * Write the DAFSA to the {@link WalkFSABoolean} file
+	 *
+	 * @param file target file
+	 */
+	public void write(Path file) throws IOException {
+		finish();
+
+		if(register.transitionCount() > Integer.MAX_VALUE)
+			throw new IllegalStateException("Too many transitions for walker format: " + register.transitionCount());
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			WalkFSABoolean.FileBuilder builder = new WalkFSABoolean.FileBuilder(channel, register.size(), (int) register.transitionCount());
+			emit(builder);
+			builder.finish();
+		}
+	}
+
+	/**
+	 * Release the state store
+	 */
+	@Override
+	public void close() throws IOException {
+		register.close();
+	}
+
+}
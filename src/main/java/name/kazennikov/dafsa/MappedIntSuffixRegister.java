@@ -0,0 +1,233 @@
+package name.kazennikov.dafsa;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Register of finished states stored in memory-mapped files. It is an external
+ * memory counterpart of the {@link IntSuffixRegister}: the states, their hash codes and
+ * the hash table are stored in {@link MappedIntArray}s, so the heap usage doesn't depend on
+ * the number of registered states.
+ *
+ * Only the state being built is kept on heap. The protocol is the same: begin(),
+ * addTransition() in ascending label order and commit().
+ *
+ * State record format in the data array: final key, transition count, (label, dest) pairs.
+ */
+public class MappedIntSuffixRegister implements Closeable {
+	final Path dir;
+
+	MappedIntArray data;
+	MappedIntArray offsets; // state -> (hi, lo) of record offset
+	MappedIntArray hashes;
+	MappedIntArray table; // open addressing hash table, state + 1, 0 - free slot
+
+	int size;
+	long transitionCount;
+	long tableMask;
+	int tableIndex;
+
+	// state being built
+	int finalKey;
+	TIntArrayList labels = new TIntArrayList();
+	TIntArrayList dest = new TIntArrayList();
+
+	/**
+	 * Create register with files in given working directory
+	 *
+	 * @param dir working directory
+	 */
+	public MappedIntSuffixRegister(Path dir) throws IOException {
+		this.dir = dir;
+		data = new MappedIntArray(dir.resolve("states.data"));
+		offsets = new MappedIntArray(dir.resolve("states.offsets"));
+		hashes = new MappedIntArray(dir.resolve("states.hashes"));
+		table = newTable(1 << 16);
+	}
+
+	MappedIntArray newTable(long capacity) throws IOException {
+		MappedIntArray t = new MappedIntArray(dir.resolve("register." + tableIndex++));
+		t.resize(capacity);
+		tableMask = capacity - 1;
+		return t;
+	}
+
+	/**
+	 * Initial hash table slot for the hash code. Hash is scrambled as
+	 * linear probing is sensitive to clustering
+	 */
+	long slot(int hash) {
+		int h = hash * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & tableMask;
+	}
+
+	/**
+	 * Double the hash table and reinsert registered states
+	 */
+	void rehash() throws IOException {
+		MappedIntArray old = table;
+		table = newTable(old.size() * 2);
+
+		for(long i = 0; i < old.size(); i++) {
+			int entry = old.get(i);
+
+			if(entry != 0) {
+				long slot = slot(hashes.get(entry - 1));
+
+				while(table.get(slot) != 0) {
+					slot = (slot + 1) & tableMask;
+				}
+
+				table.set(slot, entry);
+			}
+		}
+
+		old.close();
+	}
+
+	/**
+	 * Start building a new state
+	 *
+	 * @param finalKey final value key of the state, 0 - not final
+	 */
+	public void begin(int finalKey) {
+		this.finalKey = finalKey;
+		labels.resetQuick();
+		dest.resetQuick();
+	}
+
+	/**
+	 * Add transition to the state being built. Transitions must be added in ascending label order
+	 *
+	 * @param label transition label
+	 * @param destState registered destination state
+	 */
+	public void addTransition(int label, int destState) {
+		labels.add(label);
+		dest.add(destState);
+	}
+
+	int hash() {
+		int result = finalKey;
+
+		for(int i = 0; i < labels.size(); i++) {
+			result = 31 * result + labels.get(i);
+			result = 31 * result + dest.get(i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Checks if the state being built is equal to registered state
+	 */
+	boolean equalsBuilt(int state) {
+		long ptr = offset(state);
+
+		if(data.get(ptr) != finalKey || data.get(ptr + 1) != labels.size())
+			return false;
+
+		ptr += 2;
+
+		for(int i = 0; i < labels.size(); i++) {
+			if(data.get(ptr + 2 * i) != labels.get(i) || data.get(ptr + 2 * i + 1) != dest.get(i))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finish the state being built
+	 *
+	 * @return number of the registered state equivalent to the built one
+	 */
+	public int commit() throws IOException {
+		int hash = hash();
+		long slot = slot(hash);
+
+		while(true) {
+			int entry = table.get(slot);
+
+			if(entry == 0)
+				break;
+
+			if(hashes.get(entry - 1) == hash && equalsBuilt(entry - 1))
+				return entry - 1;
+
+			slot = (slot + 1) & tableMask;
+		}
+
+		int state = size++;
+		long ptr = data.size();
+		offsets.add((int) (ptr >>> 32));
+		offsets.add((int) ptr);
+		hashes.add(hash);
+		data.add(finalKey);
+		data.add(labels.size());
+
+		for(int i = 0; i < labels.size(); i++) {
+			data.add(labels.get(i));
+			data.add(dest.get(i));
+		}
+
+		transitionCount += labels.size();
+		table.set(slot, state + 1);
+
+		if(size > (table.size() >> 1))
+			rehash();
+
+		return state;
+	}
+
+	long offset(int state) {
+		long hi = offsets.get(2L * state);
+		long lo = offsets.get(2L * state + 1) & 0xFFFFFFFFL;
+		return (hi << 32) | lo;
+	}
+
+	/**
+	 * Number of registered states
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Total number of transitions of registered states
+	 */
+	public long transitionCount() {
+		return transitionCount;
+	}
+
+	public int finalKey(int state) {
+		return data.get(offset(state));
+	}
+
+	public int transitionCount(int state) {
+		return data.get(offset(state) + 1);
+	}
+
+	public int label(int state, int transitionIndex) {
+		return data.get(offset(state) + 2 + 2 * transitionIndex);
+	}
+
+	public int dest(int state, int transitionIndex) {
+		return data.get(offset(state) + 2 + 2 * transitionIndex + 1);
+	}
+
+	/**
+	 * Release the mapped files and remove them from working directory
+	 */
+	@Override
+	public void close() throws IOException {
+		data.close();
+		offsets.close();
+		hashes.close();
+		table.close();
+	}
+
+}
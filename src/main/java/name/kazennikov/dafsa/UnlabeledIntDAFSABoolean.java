@@ -2,7 +2,10 @@ package name.kazennikov.dafsa;
 
 import gnu.trove.list.array.TByteArrayList;
 import name.kazennikov.dafsa.AbstractIntDAFSA.State;
+import name.kazennikov.fsa.Constants;
 import name.kazennikov.fsa.IntFSABooleanEventHandler;
+import name.kazennikov.fsa.UnlabeledIntBooleanFSAEventHandler;
+import name.kazennikov.fsa.walk.WalkFSABooleanUnlabeled;
 
 public class UnlabeledIntDAFSABoolean extends AbstractUnlabeledIntDAFSA {
 	
@@ -63,6 +66,10 @@ public class UnlabeledIntDAFSABoolean extends AbstractUnlabeledIntDAFSA {
 		return finals.get(state) != 0;
 	}
 	
+	/**
+	 * Emit the DAFSA as labeled FSA, the transition label is the data of the destination state
+	 * @param events events object
+	 */
 	public void emit(IntFSABooleanEventHandler events) {
 		for(int i = 0; i < states.size(); i++) {
 			State s = states.get(i);
@@ -74,7 +81,32 @@ public class UnlabeledIntDAFSABoolean extends AbstractUnlabeledIntDAFSA {
 			
 			for(int j = 0; j < s.next.size(); j++) {
 				int dest = s.next.get(j);
-				events.addTransition(0, dest);
+				
+				if(dest != Constants.INVALID_STATE)
+					events.addTransition(states.get(dest).getData(), dest);
+			}
+			
+			events.endState();
+		}
+	}
+	
+	/**
+	 * Emit the DAFSA to unlabeled events, e.g. {@link WalkFSABooleanUnlabeled.Builder}
+	 * @param events events object
+	 */
+	public void emit(UnlabeledIntBooleanFSAEventHandler events) {
+		for(int i = 0; i < states.size(); i++) {
+			State s = states.get(i);
+			events.startState(i, s.getData());
+			
+			events.setFinalValue(finals.get(i) == 1);
+			events.setFinal();
+			
+			for(int j = 0; j < s.next.size(); j++) {
+				int dest = s.next.get(j);
+				
+				if(dest != Constants.INVALID_STATE)
+					events.addTransition(dest);
 			}
 			
 			events.endState();
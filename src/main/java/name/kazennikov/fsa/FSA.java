@@ -2,8 +2,6 @@ package name.kazennikov.fsa;
 
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.procedure.TIntIntProcedure;
-import gnu.trove.set.TIntSet;
-import gnu.trove.set.hash.TIntHashSet;
 
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
@@ -17,6 +15,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import name.kazennikov.fsa.walk.WalkFSABoolean;
 
 
 public class FSA<E> {
@@ -98,93 +99,166 @@ public class FSA<E> {
 		return closure;
 	}
 	
+	IntSubsetConstruction subsetConstruction() {
+		return subsetConstruction(null);
+	}
+	
 	/**
-	 * Get transition labels from states
+	 * Build subset construction over the flat transition table of this FSA
 	 * 
-	 * @param states set of states
-	 * 
-	 * @return labels
+	 * @param pool fork-join pool for the parallel construction, null for sequential
 	 */
-	private TIntSet labels(Set<FSAState<E>> states) {
-		TIntHashSet set = new TIntHashSet();
+	IntSubsetConstruction subsetConstruction(ForkJoinPool pool) {
+		int count = 0;
 		
-		for(FSAState<E> s : states) {
-			for(FSATransition<E> t : s.transitions) {
-				if(!t.isEpsilon())
-					set.add(t.label);
+		for(int i = 0; i < states.size(); i++) {
+			count += states.get(i).transitions.size();
+		}
+		
+		int[] stateStart = new int[states.size() + 1];
+		int[] labels = new int[count];
+		int[] dest = new int[count];
+		int pos = 0;
+		
+		for(int i = 0; i < states.size(); i++) {
+			stateStart[i] = pos;
+			
+			for(FSATransition<E> t : states.get(i).transitions) {
+				labels[pos] = t.label;
+				dest[pos] = t.dest.number;
+				pos++;
 			}
 		}
 		
-		return set;
+		stateStart[states.size()] = pos;
+		
+		if(pool != null)
+			return new ParallelSubsetConstruction(stateStart, labels, dest, pool);
+		
+		return new IntSubsetConstruction(stateStart, labels, dest);
 	}
 	
 	/**
-	 * Compute set of next states from given set by specific label 
-	 * 
-	 * @param states set states 
-	 * @param label label 
+	 * Create lazy DFA for matching with this NFA. The final values of the lazy DFA
+	 * are numbers of the final NFA states, so the final objects could be obtained by getState()
 	 * 
-	 * @return
+	 * @param maxStates maximum number of cached DFA states
 	 */
-	private Set<FSAState<E>> next(Set<FSAState<E>> states, int label) {
-		Set<FSAState<E>> next = new HashSet<FSAState<E>>();
+	public LazyDFA lazyDFA(int maxStates) {
+		int[][] finals = new int[states.size()][];
 		
 		for(FSAState<E> s : states) {
-			for(FSATransition<E> t : s.transitions) {
-				if(t.label == label)
-					next.add(t.dest);
-			}
+			if(isFinal(s))
+				finals[s.number] = new int[] {s.number};
 		}
 		
-		return next;
+		return new LazyDFA(subsetConstruction(), start.number, finals, maxStates);
 	}
 	
 	/**
-	 * Determinize this FSM
+	 * Determinize this FSM. The DFA states are NFA state sets represented
+	 * as sorted int arrays, see {@link IntSubsetConstruction}
+	 * 
 	 * @param fsm target FSM
 	 */
 	public void determinize(FSA<E> fsm) {
+		determinize(fsm, null);
+	}
+	
+	/**
+	 * Determinize this FSM in parallel. The result is the same as of the
+	 * sequential determinization, see {@link ParallelSubsetConstruction}
+	 * 
+	 * @param fsm target FSM
+	 * @param pool fork-join pool, null for sequential determinization
+	 */
+	public void determinize(FSA<E> fsm, ForkJoinPool pool) {
+		IntSubsetConstruction sc = subsetConstruction(pool);
+		sc.run(start.number);
+		
+		IntStateSetRegister sets = sc.sets();
+		List<FSAState<E>> dStates = new ArrayList<FSAState<E>>(sc.size());
+		List<FSAState<E>> members = new ArrayList<FSAState<E>>();
+		
+		for(int i = 0; i < sc.size(); i++) {
+			FSAState<E> dState = i == 0? fsm.start : fsm.addState();
+			dStates.add(dState);
+			members.clear();
+			
+			for(int j = sets.setStart(i); j < sets.setEnd(i); j++) {
+				members.add(states.get(sets.element(j)));
+			}
+			
+			mergeFinals(dState, members);
+		}
 		
-		
-		Map<Set<FSAState<E>>, FSAState<E>> newStates = new HashMap<Set<FSAState<E>>, FSAState<E>>();
-		Set<Set<FSAState<E>>> dStates = new HashSet<Set<FSAState<E>>>();
-		LinkedList<Set<FSAState<E>>> unmarkedDStates = new LinkedList<Set<FSAState<E>>>();
-		
-		Set<FSAState<E>> currentDState = new HashSet<FSAState<E>>();
-
-
-		currentDState.add(start);
-		currentDState = lambdaClosure(currentDState);
-		dStates.add(currentDState);
-		unmarkedDStates.add(currentDState);
-		
-		newStates.put(currentDState, fsm.start);
-		mergeFinals(fsm.start, currentDState);
-		
-		while(!unmarkedDStates.isEmpty()) {
-			currentDState = unmarkedDStates.removeFirst();
-			TIntSet labels = labels(currentDState);
-
-			for(int label : labels.toArray()) {
-				Set<FSAState<E>> next = next(currentDState, label);
-				next = lambdaClosure(next);
-
-				// add new state to deterministic automaton
-				if(!dStates.contains(next)) {
-					dStates.add(next);
-					unmarkedDStates.add(next);
-					FSAState<E> newState = fsm.addState();
-					newStates.put(next, newState);
-					mergeFinals(newState, next);
-				}
+		for(int i = 0; i < sc.transitionCount(); i++) {
+			fsm.addTransition(dStates.get(sc.src(i)), dStates.get(sc.dest(i)), sc.label(i));
+		}
+	}
 
-				FSAState<E> currentState = newStates.get(currentDState);
-				FSAState<E> newState = newStates.get(next);
-				fsm.addTransition(currentState, newState, label);
+	
+	/**
+	 * Compile this FSA to the event handler. The FSA is determinized and minimized
+	 * over flat arrays ({@link IntSubsetConstruction}, {@link IntHopcroftMinimizer}), so
+	 * no intermediate FSA objects are built. The final values of DFA states are
+	 * merged by mergeFinals(), states with different (by equals()) final values aren't merged.
+	 * 
+	 * @param events target event handler, e.g. walker builder
+	 * @param conv final value converter
+	 */
+	public void compile(IntFSAEventHandler events, final FinalValueConverter<? super E> conv) {
+		IntSubsetConstruction sc = subsetConstruction();
+		sc.run(start.number);
+		
+		IntStateSetRegister sets = sc.sets();
+		final List<E> values = new ArrayList<E>();
+		Map<E, Integer> keys = new HashMap<E, Integer>();
+		int[] finalKeys = new int[sc.size()];
+		List<FSAState<E>> members = new ArrayList<FSAState<E>>();
+		FSAState<E> dState = new FSAState<E>();
+		values.add(null);
+		
+		for(int i = 0; i < sc.size(); i++) {
+			members.clear();
+			
+			for(int j = sets.setStart(i); j < sets.setEnd(i); j++) {
+				members.add(states.get(sets.element(j)));
+			}
+			
+			dState.finals = null;
+			mergeFinals(dState, members);
+			
+			if(!isFinal(dState))
+				continue;
+			
+			Integer key = keys.get(dState.finals);
+			
+			if(key == null) {
+				key = values.size();
+				keys.put(dState.finals, key);
+				values.add(dState.finals);
 			}
+			
+			finalKeys[i] = key;
 		}
+		
+		sc.minimizer(finalKeys).emit(events, new IntHopcroftMinimizer.FinalConverter() {
+			@Override
+			public void setFinalValue(IntFSAEventHandler events, int finalKey) {
+				conv.setFinalValue(events, values.get(finalKey));
+			}
+		});
+	}
+	
+	/**
+	 * Compile this FSA to boolean walker
+	 */
+	public WalkFSABoolean toBooleanWalker() {
+		WalkFSABoolean.Builder builder = new WalkFSABoolean.Builder();
+		compile(builder, FinalValueConverter.BOOLEAN);
+		return builder.build();
 	}
-
 	
 	/**
 	 * Converts this epsilon-NFA to epsilon-free NFA. Non-destructive procedure
@@ -252,6 +326,30 @@ public class FSA<E> {
 		return states.size();
 	}
 	
+	/**
+	 * Compute memory footprint of the FSA. Final values are only counted,
+	 * as their size depends on the final value type
+	 */
+	public MemoryFootprint footprint() {
+		long stateBytes = MemoryFootprint.arrayList(states.size());
+		int finals = 0;
+		
+		for(FSAState<E> s : states) {
+			stateBytes += MemoryFootprint.object(4 + 2 * MemoryFootprint.REFERENCE) + MemoryFootprint.arrayList(s.transitions.size());
+			
+			if(isFinal(s))
+				finals++;
+		}
+		
+		long transitionBytes = MemoryFootprint.arrayList(transitions.size()) 
+				+ transitions.size() * MemoryFootprint.object(4 + 2 * MemoryFootprint.REFERENCE);
+		
+		return new MemoryFootprint()
+				.add(MemoryFootprint.Part.STATES, states.size(), stateBytes)
+				.add(MemoryFootprint.Part.TRANSITIONS, transitions.size(), transitionBytes)
+				.add(MemoryFootprint.Part.FINALS, finals, 0);
+	}
+	
 	/**
 	 * Reverse this FSM
 	 * 
@@ -747,7 +845,8 @@ public class FSA<E> {
 	 * @param src source state
 	 */
 	public void mergeFinals(FSAState<E> dest, FSAState<E> src) {
-		
+		if(dest.finals == null)
+			dest.finals = src.finals;
 	}
 	
 	public boolean isFinal(FSAState<E> s) {
@@ -0,0 +1,42 @@
+package name.kazennikov.fsa;
+
+/**
+ * Converter of the final values of an automaton to the final values of the
+ * event handler. Used to compile automata into other formats, e.g. walkers.
+ * 
+ * @param <E> final value type of the source automaton
+ */
+public interface FinalValueConverter<E> {
+	
+	/**
+	 * Boolean finality for {@link IntFSABooleanEventHandler}: the state is final if it has a final value
+	 */
+	public static final FinalValueConverter<Object> BOOLEAN = new FinalValueConverter<Object>() {
+		@Override
+		public void setFinalValue(IntFSAEventHandler events, Object value) {
+			((IntFSABooleanEventHandler) events).setFinalValue(value != null);
+		}
+	};
+	
+	/**
+	 * Int array final values for {@link IntFSAObjectEventHandler}, non-final states get empty array
+	 */
+	public static final FinalValueConverter<int[]> INT_ARRAY = new FinalValueConverter<int[]>() {
+		final int[] empty = new int[0];
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		public void setFinalValue(IntFSAEventHandler events, int[] value) {
+			((IntFSAObjectEventHandler<int[]>) events).setFinalValue(value != null? value : empty);
+		}
+	};
+	
+	/**
+	 * Set final value of the current state. Called before setFinal() for each state
+	 * 
+	 * @param events target event handler
+	 * @param value final value of the state, null for non-final states
+	 */
+	public void setFinalValue(IntFSAEventHandler events, E value);
+
+}
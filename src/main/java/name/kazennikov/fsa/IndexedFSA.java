@@ -1,7 +1,9 @@
 package name.kazennikov.fsa;
 
+import gnu.trove.impl.hash.THash;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import gnu.trove.procedure.TIntIntProcedure;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
@@ -17,6 +19,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import name.kazennikov.fsa.walk.WalkFSABoolean;
+import name.kazennikov.fsa.walk.WalkFSAInt;
 
 import com.google.common.base.Objects;
 
@@ -24,7 +30,7 @@ public class IndexedFSA {
 	public static class State {
 		int number;
 		List<Transition> transitions = new ArrayList<Transition>();
-		TIntSet finals;
+		TIntSet finals = new TIntHashSet();
 
 		public boolean isFinal() {
 			return !finals.isEmpty();
@@ -204,75 +210,174 @@ public class IndexedFSA {
 		return closure;
 	}
 	
-	private TIntSet labels(Set<State> states) {
-		TIntHashSet set = new TIntHashSet();
+	IntSubsetConstruction subsetConstruction() {
+		return subsetConstruction(null);
+	}
+	
+	/**
+	 * Build subset construction over the flat transition table of this FSA
+	 * 
+	 * @param pool fork-join pool for the parallel construction, null for sequential
+	 */
+	IntSubsetConstruction subsetConstruction(ForkJoinPool pool) {
+		int count = 0;
 		
-		for(State s : states) {
-			for(Transition t : s.transitions) {
-				if(!t.isEpsilon())
-					set.add(t.label);
+		for(int i = 0; i < states.size(); i++) {
+			count += states.get(i).transitions.size();
+		}
+		
+		int[] stateStart = new int[states.size() + 1];
+		int[] labels = new int[count];
+		int[] dest = new int[count];
+		int pos = 0;
+		
+		for(int i = 0; i < states.size(); i++) {
+			stateStart[i] = pos;
+			
+			for(Transition t : states.get(i).transitions) {
+				labels[pos] = t.label;
+				dest[pos] = t.dest.number;
+				pos++;
 			}
 		}
 		
-		return set;
+		stateStart[states.size()] = pos;
+		
+		if(pool != null)
+			return new ParallelSubsetConstruction(stateStart, labels, dest, pool);
+		
+		return new IntSubsetConstruction(stateStart, labels, dest);
 	}
 	
-	private Set<State> next(Set<State> states, int label) {
-		Set<State> next = new HashSet<State>();
+	/**
+	 * Create lazy DFA for matching with this NFA
+	 * 
+	 * @param maxStates maximum number of cached DFA states
+	 */
+	public LazyDFA lazyDFA(int maxStates) {
+		int[][] finals = new int[states.size()][];
 		
 		for(State s : states) {
-			for(Transition t : s.transitions) {
-				if(t.label == label)
-					next.add(t.dest);
-			}
+			if(s.isFinal())
+				finals[s.number] = s.finals.toArray();
 		}
 		
-		return next;
+		return new LazyDFA(subsetConstruction(), start.number, finals, maxStates);
 	}
 	
-	
+	/**
+	 * Determinize this FSM. The DFA states are NFA state sets represented
+	 * as sorted int arrays, see {@link IntSubsetConstruction}
+	 * 
+	 * @param fsm target FSM
+	 */
 	public void determinize(IndexedFSA fsm) {
+		determinize(fsm, null);
+	}
+	
+	/**
+	 * Determinize this FSM in parallel. The result is the same as of the
+	 * sequential determinization, see {@link ParallelSubsetConstruction}
+	 * 
+	 * @param fsm target FSM
+	 * @param pool fork-join pool, null for sequential determinization
+	 */
+	public void determinize(IndexedFSA fsm, ForkJoinPool pool) {
+		IntSubsetConstruction sc = subsetConstruction(pool);
+		sc.run(start.number);
 		
+		IntStateSetRegister sets = sc.sets();
+		List<State> dStates = new ArrayList<State>(sc.size());
 		
-		Map<Set<State>, State> newStates = new HashMap<Set<State>, State>();
-		Set<Set<State>> dStates = new HashSet<Set<State>>();
-		LinkedList<Set<State>> unmarkedDStates = new LinkedList<Set<State>>();
-		
-		Set<State> currentDState = new HashSet<State>();
-
-
-		currentDState.add(start);
-		currentDState = lambdaClosure(currentDState);
-		dStates.add(currentDState);
-		unmarkedDStates.add(currentDState);
-		
-		newStates.put(currentDState, fsm.start);
-		fsm.start.setFinalFrom(currentDState);
+		for(int i = 0; i < sc.size(); i++) {
+			State dState = i == 0? fsm.start : fsm.addState();
+			dStates.add(dState);
+			
+			for(int j = sets.setStart(i); j < sets.setEnd(i); j++) {
+				State s = states.get(sets.element(j));
+				
+				if(s.isFinal())
+					dState.finals.addAll(s.finals);
+			}
+		}
 		
-		while(!unmarkedDStates.isEmpty()) {
-			currentDState = unmarkedDStates.removeFirst();
-			TIntSet labels = labels(currentDState);
-
-			for(int label : labels.toArray()) {
-				Set<State> next = next(currentDState, label);
-				next = lambdaClosure(next);
-
-				// add new state to epsilon-free automaton
-				if(!dStates.contains(next)) {
-					dStates.add(next);
-					unmarkedDStates.add(next);
-					State newState = fsm.addState();
-					newStates.put(next, newState);
-					newState.setFinalFrom(next);
-				}
+		for(int i = 0; i < sc.transitionCount(); i++) {
+			fsm.addTransition(dStates.get(sc.src(i)), dStates.get(sc.dest(i)), sc.label(i));
+		}
+	}
 
-				State currentState = newStates.get(currentDState);
-				State newState = newStates.get(next);
-				fsm.addTransition(currentState, newState, label);
+	
+	/**
+	 * Compile this FSA to the event handler. The FSA is determinized and minimized
+	 * over flat arrays ({@link IntSubsetConstruction}, {@link IntHopcroftMinimizer}), so
+	 * no intermediate FSA objects are built. The final values of a DFA state are
+	 * the sorted union of the final values of its NFA states.
+	 * 
+	 * @param events target event handler, e.g. walker builder
+	 * @param conv final value converter
+	 */
+	public void compile(IntFSAEventHandler events, final FinalValueConverter<? super int[]> conv) {
+		IntSubsetConstruction sc = subsetConstruction();
+		sc.run(start.number);
+		
+		IntStateSetRegister sets = sc.sets();
+		final List<int[]> values = new ArrayList<int[]>();
+		TObjectIntHashMap<TIntArrayList> keys = new TObjectIntHashMap<TIntArrayList>();
+		int[] finalKeys = new int[sc.size()];
+		TIntHashSet union = new TIntHashSet();
+		values.add(null);
+		
+		for(int i = 0; i < sc.size(); i++) {
+			union.clear();
+			
+			for(int j = sets.setStart(i); j < sets.setEnd(i); j++) {
+				State s = states.get(sets.element(j));
+				
+				if(s.isFinal())
+					union.addAll(s.finals);
 			}
+			
+			if(union.isEmpty())
+				continue;
+			
+			TIntArrayList value = new TIntArrayList(union.toArray());
+			value.sort();
+			int key = keys.get(value);
+			
+			if(key == 0) {
+				key = values.size();
+				keys.put(value, key);
+				values.add(value.toArray());
+			}
+			
+			finalKeys[i] = key;
 		}
+		
+		sc.minimizer(finalKeys).emit(events, new IntHopcroftMinimizer.FinalConverter() {
+			@Override
+			public void setFinalValue(IntFSAEventHandler events, int finalKey) {
+				conv.setFinalValue(events, values.get(finalKey));
+			}
+		});
+	}
+	
+	/**
+	 * Compile this FSA to walker with int final values
+	 */
+	public WalkFSAInt toWalker() {
+		WalkFSAInt.Builder builder = new WalkFSAInt.Builder();
+		compile(builder, FinalValueConverter.INT_ARRAY);
+		return builder.build();
+	}
+	
+	/**
+	 * Compile this FSA to boolean walker
+	 */
+	public WalkFSABoolean toBooleanWalker() {
+		WalkFSABoolean.Builder builder = new WalkFSABoolean.Builder();
+		compile(builder, FinalValueConverter.BOOLEAN);
+		return builder.build();
 	}
-
 	
 	/**
 	 * Converts this epsilon-NFA to epsilon-free NFA. Non-destructive procedure
@@ -338,6 +443,34 @@ public class IndexedFSA {
 		return states.size();
 	}
 	
+	/**
+	 * Compute memory footprint of the FSA
+	 */
+	public MemoryFootprint footprint() {
+		long stateBytes = MemoryFootprint.arrayList(states.size());
+		long finalBytes = 0;
+		int finals = 0;
+		
+		for(State s : states) {
+			stateBytes += MemoryFootprint.object(4 + 2 * MemoryFootprint.REFERENCE) + MemoryFootprint.arrayList(s.transitions.size());
+			
+			if(s.finals instanceof THash)
+				finalBytes += MemoryFootprint.troveHash((THash) s.finals, 4);
+
+			if(s.finals != null && !s.finals.isEmpty())
+				finals++;
+		}
+		
+		long transitionBytes = MemoryFootprint.arrayList(transitions.size()) 
+				+ transitions.size() * MemoryFootprint.object(4 + 2 * MemoryFootprint.REFERENCE)
+				+ 3 * MemoryFootprint.troveList(transitions.size(), 4);
+		
+		return new MemoryFootprint()
+				.add(MemoryFootprint.Part.STATES, states.size(), stateBytes)
+				.add(MemoryFootprint.Part.TRANSITIONS, transitions.size(), transitionBytes)
+				.add(MemoryFootprint.Part.FINALS, finals, finalBytes);
+	}
+	
 	public void rev(IndexedFSA fsm) {
 		
 		List<State> finals = new ArrayList<State>();
@@ -0,0 +1,18 @@
+package name.kazennikov.fsa;
+
+/**
+ * Read-only view of a FSA with set of integers as final value
+ *
+ */
+public interface IntFSAIntView extends IntFSAView {
+	
+	/**
+	 * Get final values of the state
+	 * 
+	 * @param state state number
+	 * 
+	 * @return final values, empty array if the state isn't final
+	 */
+	public int[] getFinalValues(int state);
+
+}
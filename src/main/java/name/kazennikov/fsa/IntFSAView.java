@@ -0,0 +1,57 @@
+package name.kazennikov.fsa;
+
+/**
+ * Read-only view of a deterministic FSA with int labels. Allows algorithms to traverse
+ * already built automata (both DAFSAs under construction and walkers) in uniform way.
+ * 
+ * Transitions of a state are addressed by index in range [0, getTransitionCount(state))
+ *
+ */
+public interface IntFSAView {
+	
+	/**
+	 * Start state number
+	 */
+	public int getStartState();
+	
+	/**
+	 * Find destination state of the transition
+	 * 
+	 * @param state source state
+	 * @param input transition label
+	 * 
+	 * @return destination state, or -1 (INVALID_STATE) if there is no such transition
+	 */
+	public int getNext(int state, int input);
+	
+	/**
+	 * Number of outbound transitions of the state
+	 * 
+	 * @param state state number
+	 */
+	public int getTransitionCount(int state);
+	
+	/**
+	 * Label of the transition
+	 * 
+	 * @param state state number
+	 * @param transitionIndex transition index
+	 */
+	public int getTransitionInput(int state, int transitionIndex);
+	
+	/**
+	 * Destination state of the transition
+	 * 
+	 * @param state state number
+	 * @param transitionIndex transition index
+	 */
+	public int getTransitionNext(int state, int transitionIndex);
+	
+	/**
+	 * Checks if state is final
+	 * 
+	 * @param state state number
+	 */
+	public boolean isFinalState(int state);
+
+}
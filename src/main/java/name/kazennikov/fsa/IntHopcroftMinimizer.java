@@ -0,0 +1,440 @@
+package name.kazennikov.fsa;
+
+import java.util.Arrays;
+
+/**
+ * Array-based DFA minimization. Implements the Hopcroft partition refinement
+ * in the form of Valmari and Lehtinen ("Efficient minimization of DFAs with partial
+ * transition functions", 2008): both states and transitions are partitioned,
+ * so the algorithm works in O(m log n) for partial DFA without adding the sink state.
+ * 
+ * The DFA is given as flat arrays of transitions (src, label, dest) and a final key
+ * for each state. Final key 0 means that the state isn't final, states with different keys
+ * are never merged, so the keys could be used for arbitrary final values interned as ints.
+ * 
+ * All working data is kept in preallocated int arrays. The minimal DFA is emitted directly
+ * into the {@link IntFSAEventHandler} with the start state numbered 0, states numbered in BFS order
+ * and transitions sorted by label.
+ * 
+ * States that aren't reachable from the start state or couldn't reach a final state are removed.
+ *
+ */
+public class IntHopcroftMinimizer {
+	
+	/**
+	 * Converter of the final key to the final value of the event handler
+	 */
+	public static interface FinalConverter {
+		/**
+		 * Set final value of the current state. Called before setFinal()
+		 * 
+		 * @param events target event handler
+		 * @param finalKey final key of the state, 0 for non-final states
+		 */
+		public void setFinalValue(IntFSAEventHandler events, int finalKey);
+	}
+	
+	/**
+	 * Boolean finality converter for {@link IntFSABooleanEventHandler}
+	 */
+	public static final FinalConverter BOOLEAN = new FinalConverter() {
+		@Override
+		public void setFinalValue(IntFSAEventHandler events, int finalKey) {
+			((IntFSABooleanEventHandler) events).setFinalValue(finalKey != 0);
+		}
+	};
+	
+	/**
+	 * Refinable partition of range [0, n)
+	 */
+	class Partition {
+		int z; // number of sets
+		int[] elems; // elements ordered by set
+		int[] loc; // location of element in elems
+		int[] set; // set of element
+		int[] first; // first index of set in elems
+		int[] past; // past-end index of set in elems
+		
+		Partition(int n) {
+			z = n > 0? 1 : 0;
+			elems = new int[n];
+			loc = new int[n];
+			set = new int[n];
+			first = new int[n];
+			past = new int[n];
+			
+			for(int i = 0; i < n; i++) {
+				elems[i] = loc[i] = i;
+			}
+			
+			if(z > 0)
+				past[0] = n;
+		}
+		
+		void mark(int e) {
+			int s = set[e];
+			int i = loc[e];
+			int j = first[s] + marked[s];
+			elems[i] = elems[j];
+			loc[elems[i]] = i;
+			elems[j] = e;
+			loc[e] = j;
+			
+			if(marked[s]++ == 0)
+				touched[touchedCount++] = s;
+		}
+		
+		void split() {
+			while(touchedCount > 0) {
+				int s = touched[--touchedCount];
+				int j = first[s] + marked[s];
+				
+				if(j == past[s]) {
+					marked[s] = 0;
+					continue;
+				}
+				
+				// the smaller part becomes the new set
+				if(marked[s] <= past[s] - j) {
+					first[z] = first[s];
+					past[z] = first[s] = j;
+				} else {
+					past[z] = past[s];
+					first[z] = past[s] = j;
+				}
+				
+				for(int i = first[z]; i < past[z]; i++) {
+					set[elems[i]] = z;
+				}
+				
+				marked[s] = marked[z++] = 0;
+			}
+		}
+	}
+	
+	final int stateCount;
+	final int start;
+	int transitionCount;
+	final int[] src;
+	final int[] labels;
+	final int[] dest;
+	final int[] finalKeys;
+	
+	Partition blocks;
+	Partition cords;
+	
+	// shared by both partitions
+	int[] marked;
+	int[] touched;
+	int touchedCount;
+	
+	// adjacent transitions
+	int[] adj;
+	int[] adjStart;
+	
+	int reached;
+	// number of live states, they occupy [0, live) range of the initial block
+	int live;
+	boolean minimized;
+	
+	/**
+	 * Create minimizer. The transition arrays are modified by the minimization
+	 * 
+	 * @param stateCount number of states
+	 * @param start start state
+	 * @param src transition sources
+	 * @param labels transition labels
+	 * @param dest transition destinations
+	 * @param transitionCount number of transitions
+	 * @param finalKeys final keys of the states, 0 for non-final states
+	 */
+	public IntHopcroftMinimizer(int stateCount, int start, int[] src, int[] labels, int[] dest, int transitionCount, int[] finalKeys) {
+		this.stateCount = stateCount;
+		this.start = start;
+		this.src = src;
+		this.labels = labels;
+		this.dest = dest;
+		this.transitionCount = transitionCount;
+		this.finalKeys = finalKeys;
+	}
+	
+	/**
+	 * Compute adjacency lists of states by given transition end (src or dest)
+	 */
+	void makeAdjacent(int[] end) {
+		for(int q = 0; q <= stateCount; q++) {
+			adjStart[q] = 0;
+		}
+		
+		for(int t = 0; t < transitionCount; t++) {
+			adjStart[end[t]]++;
+		}
+		
+		for(int q = 0; q < stateCount; q++) {
+			adjStart[q + 1] += adjStart[q];
+		}
+		
+		for(int t = transitionCount; t-- > 0; ) {
+			adj[--adjStart[end[t]]] = t;
+		}
+	}
+	
+	void reach(int q) {
+		int i = blocks.loc[q];
+		
+		if(i >= reached) {
+			blocks.elems[i] = blocks.elems[reached];
+			blocks.loc[blocks.elems[i]] = i;
+			blocks.elems[reached] = q;
+			blocks.loc[q] = reached++;
+		}
+	}
+	
+	/**
+	 * Remove states not reached by traversal from ends to other ends
+	 * of transitions, and their transitions
+	 */
+	void removeUnreachable(int[] from, int[] to) {
+		makeAdjacent(from);
+		
+		for(int i = 0; i < reached; i++) {
+			int q = blocks.elems[i];
+			
+			for(int j = adjStart[q]; j < adjStart[q + 1]; j++) {
+				reach(to[adj[j]]);
+			}
+		}
+		
+		int j = 0;
+		
+		for(int t = 0; t < transitionCount; t++) {
+			if(blocks.loc[from[t]] < reached) {
+				src[j] = src[t];
+				labels[j] = labels[t];
+				dest[j] = dest[t];
+				j++;
+			}
+		}
+		
+		transitionCount = j;
+		blocks.past[0] = reached;
+		reached = 0;
+	}
+	
+	/**
+	 * Compute the minimal partition
+	 */
+	public void minimize() {
+		if(minimized)
+			return;
+		
+		minimized = true;
+		blocks = new Partition(stateCount);
+		adj = new int[transitionCount];
+		adjStart = new int[stateCount + 1];
+		marked = new int[Math.max(stateCount, transitionCount) + 1];
+		touched = new int[Math.max(stateCount, transitionCount) + 1];
+		
+		reach(start);
+		removeUnreachable(src, dest);
+		
+		for(int q = 0; q < stateCount; q++) {
+			if(finalKeys[q] != 0 && blocks.loc[q] < blocks.past[0])
+				reach(q);
+		}
+		
+		int finals = reached;
+		removeUnreachable(dest, src);
+		live = blocks.past[0];
+		
+		// initial partition: the live states are in the range [0, past[0]), finals first
+		if(finals > 0) {
+			marked[0] = finals;
+			touched[touchedCount++] = 0;
+			blocks.split();
+			splitByKeys();
+		}
+		
+		cords = new Partition(transitionCount);
+		
+		if(transitionCount > 0) {
+			sortCordsByLabel();
+		}
+		
+		makeAdjacent(dest);
+		int b = 1;
+		int c = 0;
+		
+		while(c < cords.z) {
+			for(int i = cords.first[c]; i < cords.past[c]; i++) {
+				blocks.mark(src[cords.elems[i]]);
+			}
+			
+			blocks.split();
+			c++;
+			
+			while(b < blocks.z) {
+				for(int i = blocks.first[b]; i < blocks.past[b]; i++) {
+					int q = blocks.elems[i];
+					
+					for(int j = adjStart[q]; j < adjStart[q + 1]; j++) {
+						cords.mark(adj[j]);
+					}
+				}
+				
+				cords.split();
+				b++;
+			}
+		}
+	}
+	
+	/**
+	 * Split the final states by the final keys
+	 */
+	void splitByKeys() {
+		int finalBlock = blocks.set[blocks.elems[0]];
+		int from = blocks.first[finalBlock];
+		int to = blocks.past[finalBlock];
+		
+		// sort the final states by key and split off each key group
+		int[] states = new int[to - from];
+		
+		for(int i = from; i < to; i++) {
+			states[i - from] = blocks.elems[i];
+		}
+		
+		sortByKey(states);
+		int i = 0;
+		
+		while(i < states.length) {
+			int key = finalKeys[states[i]];
+			
+			for(; i < states.length && finalKeys[states[i]] == key; i++) {
+				blocks.mark(states[i]);
+			}
+			
+			blocks.split();
+		}
+	}
+	
+	void sortByKey(int[] states) {
+		long[] tmp = new long[states.length];
+		
+		for(int i = 0; i < states.length; i++) {
+			tmp[i] = ((long) finalKeys[states[i]] << 32) | states[i];
+		}
+		
+		Arrays.sort(tmp);
+		
+		for(int i = 0; i < states.length; i++) {
+			states[i] = (int) tmp[i];
+		}
+	}
+	
+	/**
+	 * Initial transition partition: transitions grouped by label
+	 */
+	void sortCordsByLabel() {
+		long[] tmp = new long[transitionCount];
+		
+		for(int t = 0; t < transitionCount; t++) {
+			tmp[t] = ((long) labels[t] << 32) | t;
+		}
+		
+		Arrays.sort(tmp);
+		
+		cords.z = 0;
+		marked[0] = 0;
+		int label = labels[(int) tmp[0]];
+		
+		for(int i = 0; i < transitionCount; i++) {
+			int t = (int) tmp[i];
+			cords.elems[i] = t;
+			
+			if(labels[t] != label) {
+				label = labels[t];
+				cords.past[cords.z++] = i;
+				cords.first[cords.z] = i;
+				marked[cords.z] = 0;
+			}
+			
+			cords.set[t] = cords.z;
+			cords.loc[t] = i;
+		}
+		
+		cords.past[cords.z++] = transitionCount;
+	}
+	
+	/**
+	 * Number of states of the minimal DFA
+	 */
+	public int size() {
+		minimize();
+		return live > 0? blocks.z : 1;
+	}
+	
+	/**
+	 * Emit the minimal DFA
+	 * 
+	 * @param events target event handler
+	 * @param conv final value converter
+	 */
+	public void emit(IntFSAEventHandler events, FinalConverter conv) {
+		minimize();
+		
+		// empty language: single non-final start state
+		if(live == 0) {
+			events.startState(0);
+			conv.setFinalValue(events, 0);
+			events.setFinal();
+			events.endState();
+			return;
+		}
+		
+		makeAdjacent(src);
+		
+		// number blocks in BFS order from the start block
+		int[] number = new int[blocks.z];
+		Arrays.fill(number, -1);
+		int[] queue = new int[blocks.z];
+		int count = 0;
+		number[blocks.set[start]] = count;
+		queue[count++] = blocks.set[start];
+		long[] out = new long[16];
+		
+		for(int head = 0; head < count; head++) {
+			int b = queue[head];
+			int rep = blocks.elems[blocks.first[b]];
+			int n = 0;
+			
+			for(int j = adjStart[rep]; j < adjStart[rep + 1]; j++) {
+				int t = adj[j];
+				
+				if(n == out.length)
+					out = Arrays.copyOf(out, n * 2);
+				
+				out[n++] = ((long) labels[t] << 32) | blocks.set[dest[t]];
+			}
+			
+			Arrays.sort(out, 0, n);
+			
+			events.startState(head);
+			conv.setFinalValue(events, finalKeys[rep]);
+			events.setFinal();
+			
+			for(int i = 0; i < n; i++) {
+				int d = (int) out[i];
+				
+				if(number[d] == -1) {
+					number[d] = count;
+					queue[count++] = d;
+				}
+				
+				events.addTransition((int) (out[i] >> 32), number[d]);
+			}
+			
+			events.endState();
+		}
+	}
+
+}
@@ -0,0 +1,573 @@
+package name.kazennikov.fsa;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import name.kazennikov.fsa.walk.WalkFSAInt;
+
+/**
+ * Compiler of regular expressions to epsilon-NFA ({@link IndexedFSA}) by Thompson construction.
+ * Many patterns are compiled into a single automaton, each pattern has a named output,
+ * which is put to the final values of its final state as int id (starting from 1).
+ * 
+ * The labels are UTF-16 chars of the pattern (as in {@link WalkFSAInt#walk(String)}). Supported syntax:
+ * <ul>
+ * <li> literals and escapes: \t, \n, \r, \f, \\uXXXX, \x for any other char x
+ * <li> classes: [abc], [a-z], [^a-z], \d, \w, \s, \D, \W, \S
+ * <li> any label: .
+ * <li> grouping: (...), (?:...)
+ * <li> alternation: a|b
+ * <li> repetition: *, +, ?, {n}, {n,}, {n,m}
+ * </ul>
+ * 
+ * As labels aren't bounded, '.' and negated classes require an alphabet, see {@link #setAlphabet(int...)}.
+ * 
+ * The compiled automaton is turned into walker by {@link IndexedFSA#toWalker()}, that performs epsilon removal,
+ * determinization and minimization over flat arrays.
+ *
+ */
+public class IntRegexCompiler {
+	
+	/**
+	 * NFA fragment with single entry and single exit
+	 */
+	static class Fragment {
+		final IndexedFSA.State start;
+		final IndexedFSA.State end;
+		
+		Fragment(IndexedFSA.State start, IndexedFSA.State end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+	
+	/**
+	 * Regular expression syntax tree node
+	 */
+	abstract class Node {
+		abstract Fragment compile();
+	}
+	
+	class LabelSet extends Node {
+		final int[] labels;
+		
+		LabelSet(int[] labels) {
+			for(int label : labels) {
+				if(label == Constants.EPSILON)
+					throw error("Label " + Constants.EPSILON + " is reserved for epsilon transitions");
+			}
+			
+			this.labels = labels;
+		}
+		
+		@Override
+		Fragment compile() {
+			IndexedFSA.State start = fsa.addState();
+			IndexedFSA.State end = fsa.addState();
+			
+			for(int label : labels) {
+				fsa.addTransition(start, end, label);
+			}
+			
+			return new Fragment(start, end);
+		}
+	}
+	
+	class Concat extends Node {
+		final List<Node> nodes;
+		
+		Concat(List<Node> nodes) {
+			this.nodes = nodes;
+		}
+		
+		@Override
+		Fragment compile() {
+			if(nodes.isEmpty()) {
+				IndexedFSA.State s = fsa.addState();
+				return new Fragment(s, s);
+			}
+			
+			Fragment f = nodes.get(0).compile();
+			IndexedFSA.State end = f.end;
+			
+			for(int i = 1; i < nodes.size(); i++) {
+				Fragment next = nodes.get(i).compile();
+				fsa.addTransition(end, next.start, Constants.EPSILON);
+				end = next.end;
+			}
+			
+			return new Fragment(f.start, end);
+		}
+	}
+	
+	class Alt extends Node {
+		final List<Node> nodes;
+		
+		Alt(List<Node> nodes) {
+			this.nodes = nodes;
+		}
+		
+		@Override
+		Fragment compile() {
+			IndexedFSA.State start = fsa.addState();
+			IndexedFSA.State end = fsa.addState();
+			
+			for(Node n : nodes) {
+				Fragment f = n.compile();
+				fsa.addTransition(start, f.start, Constants.EPSILON);
+				fsa.addTransition(f.end, end, Constants.EPSILON);
+			}
+			
+			return new Fragment(start, end);
+		}
+	}
+	
+	class Repeat extends Node {
+		final Node node;
+		final int min;
+		final int max; // -1 - unbounded
+		
+		Repeat(Node node, int min, int max) {
+			this.node = node;
+			this.min = min;
+			this.max = max;
+		}
+		
+		@Override
+		Fragment compile() {
+			IndexedFSA.State start = fsa.addState();
+			IndexedFSA.State end = start;
+			
+			for(int i = 0; i < min; i++) {
+				Fragment f = node.compile();
+				fsa.addTransition(end, f.start, Constants.EPSILON);
+				end = f.end;
+			}
+			
+			if(max == -1) {
+				// star: loop over a fresh copy
+				Fragment f = node.compile();
+				IndexedFSA.State loop = fsa.addState();
+				fsa.addTransition(end, loop, Constants.EPSILON);
+				fsa.addTransition(loop, f.start, Constants.EPSILON);
+				fsa.addTransition(f.end, loop, Constants.EPSILON);
+				end = loop;
+			} else {
+				// optional copies, all skip to the common exit
+				IndexedFSA.State exit = fsa.addState();
+				
+				for(int i = min; i < max; i++) {
+					Fragment f = node.compile();
+					fsa.addTransition(end, exit, Constants.EPSILON);
+					fsa.addTransition(end, f.start, Constants.EPSILON);
+					end = f.end;
+				}
+				
+				fsa.addTransition(end, exit, Constants.EPSILON);
+				end = exit;
+			}
+			
+			return new Fragment(start, end);
+		}
+	}
+	
+	IndexedFSA fsa = new IndexedFSA();
+	int[] alphabet;
+	TObjectIntHashMap<String> outputIds = new TObjectIntHashMap<String>();
+	List<String> outputs = new ArrayList<String>();
+	
+	// parser state
+	String pattern;
+	int pos;
+	
+	public IntRegexCompiler() {
+		outputs.add(null); // 0 - no output
+	}
+	
+	/**
+	 * Set alphabet for '.' and negated classes
+	 * 
+	 * @param labels alphabet labels
+	 */
+	public void setAlphabet(int... labels) {
+		this.alphabet = labels.clone();
+	}
+	
+	/**
+	 * Set alphabet for '.' and negated classes as a range of chars
+	 * 
+	 * @param from first char
+	 * @param to last char (inclusive)
+	 */
+	public void setAlphabet(char from, char to) {
+		alphabet = new int[to - from + 1];
+		
+		for(int i = 0; i < alphabet.length; i++) {
+			alphabet[i] = from + i;
+		}
+	}
+	
+	/**
+	 * Add pattern to the automaton
+	 * 
+	 * @param pattern regular expression
+	 * @param output output name
+	 * 
+	 * @return output id
+	 */
+	public int add(String pattern, String output) {
+		// parse first, so a malformed pattern doesn't register the output
+		Node node = parse(pattern);
+		int id = outputIds.get(output);
+		
+		if(id == 0) {
+			id = outputs.size();
+			outputs.add(output);
+			outputIds.put(output, id);
+		}
+		
+		Fragment f = node.compile();
+		fsa.addTransition(fsa.getStart(), f.start, Constants.EPSILON);
+		f.end.getFinals().add(id);
+		
+		return id;
+	}
+	
+	/**
+	 * Compiled epsilon-NFA
+	 */
+	public IndexedFSA getFSA() {
+		return fsa;
+	}
+	
+	/**
+	 * Compile the patterns into walker. The walker final values are output ids
+	 */
+	public WalkFSAInt toWalker() {
+		return fsa.toWalker();
+	}
+	
+	/**
+	 * Output name by id
+	 */
+	public String output(int id) {
+		return outputs.get(id);
+	}
+	
+	/**
+	 * Output id by name, 0 if there is no such output
+	 */
+	public int outputId(String output) {
+		return outputIds.get(output);
+	}
+	
+	/**
+	 * Number of outputs
+	 */
+	public int outputCount() {
+		return outputs.size() - 1;
+	}
+	
+	Node parse(String pattern) {
+		this.pattern = pattern;
+		this.pos = 0;
+		Node node = parseAlt();
+		
+		if(pos != pattern.length())
+			throw error("Unexpected '" + pattern.charAt(pos) + "'");
+		
+		return node;
+	}
+	
+	IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at " + pos + " in pattern: " + pattern);
+	}
+	
+	boolean more() {
+		return pos < pattern.length();
+	}
+	
+	char peek() {
+		return pattern.charAt(pos);
+	}
+	
+	boolean accept(char ch) {
+		if(more() && peek() == ch) {
+			pos++;
+			return true;
+		}
+		
+		return false;
+	}
+	
+	Node parseAlt() {
+		List<Node> nodes = new ArrayList<Node>();
+		nodes.add(parseConcat());
+		
+		while(accept('|')) {
+			nodes.add(parseConcat());
+		}
+		
+		return nodes.size() == 1? nodes.get(0) : new Alt(nodes);
+	}
+	
+	Node parseConcat() {
+		List<Node> nodes = new ArrayList<Node>();
+		
+		while(more() && peek() != '|' && peek() != ')') {
+			nodes.add(parseRepeat());
+		}
+		
+		return nodes.size() == 1? nodes.get(0) : new Concat(nodes);
+	}
+	
+	Node parseRepeat() {
+		Node node = parseAtom();
+		
+		while(more()) {
+			if(accept('*')) {
+				node = new Repeat(node, 0, -1);
+			} else if(accept('+')) {
+				node = new Repeat(node, 1, -1);
+			} else if(accept('?')) {
+				node = new Repeat(node, 0, 1);
+			} else if(accept('{')) {
+				int min = parseInt();
+				int max = min;
+				
+				if(accept(',')) {
+					max = more() && peek() == '}'? -1 : parseInt();
+				}
+				
+				if(!accept('}'))
+					throw error("Expected '}'");
+				
+				if(max != -1 && max < min)
+					throw error("Invalid repetition range");
+				
+				node = new Repeat(node, min, max);
+			} else {
+				break;
+			}
+		}
+		
+		return node;
+	}
+	
+	int parseInt() {
+		int start = pos;
+		
+		while(more() && Character.isDigit(peek())) {
+			pos++;
+		}
+		
+		if(start == pos)
+			throw error("Expected number");
+		
+		return Integer.parseInt(pattern.substring(start, pos));
+	}
+	
+	Node parseAtom() {
+		if(!more())
+			throw error("Unexpected end");
+		
+		char ch = pattern.charAt(pos++);
+		
+		switch(ch) {
+		case '(':
+			if(accept('?')) {
+				if(!accept(':'))
+					throw error("Expected ':'");
+			}
+			
+			Node node = parseAlt();
+			
+			if(!accept(')'))
+				throw error("Expected ')'");
+			
+			return node;
+			
+		case '[':
+			return new LabelSet(parseClass());
+			
+		case '.':
+			return new LabelSet(alphabet());
+			
+		case '\\': {
+			TIntHashSet set = new TIntHashSet();
+			
+			if(!parseClassEscape(set))
+				set.add(parseEscape());
+			
+			return new LabelSet(sorted(set));
+		}
+			
+		case '*':
+		case '+':
+		case '?':
+		case '{':
+		case ')':
+			pos--;
+			throw error("Unexpected '" + ch + "'");
+		
+		default:
+			return new LabelSet(new int[] {ch});
+		}
+	}
+	
+	int[] alphabet() {
+		if(alphabet == null)
+			throw error("Alphabet isn't set");
+		
+		return alphabet;
+	}
+	
+	/**
+	 * Parse char escape after '\'
+	 */
+	int parseEscape() {
+		if(!more())
+			throw error("Unexpected end");
+		
+		char ch = pattern.charAt(pos++);
+		
+		switch(ch) {
+		case 't':
+			return '\t';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		case 'u':
+			if(pos + 4 > pattern.length())
+				throw error("Invalid unicode escape");
+			
+			try {
+				int value = Integer.parseInt(pattern.substring(pos, pos + 4), 16);
+				pos += 4;
+				return value;
+			} catch(NumberFormatException e) {
+				throw error("Invalid unicode escape");
+			}
+		default:
+			return ch;
+		}
+	}
+	
+	/**
+	 * Parse class escape (\d, \w, \s and negations) after '\'
+	 * 
+	 * @return false if there is no class escape at current position
+	 */
+	boolean parseClassEscape(TIntHashSet set) {
+		if(!more())
+			return false;
+		
+		char ch = peek();
+		TIntHashSet cls = new TIntHashSet();
+		
+		switch(Character.toLowerCase(ch)) {
+		case 'd':
+			addRange(cls, '0', '9');
+			break;
+		case 'w':
+			addRange(cls, 'a', 'z');
+			addRange(cls, 'A', 'Z');
+			addRange(cls, '0', '9');
+			cls.add('_');
+			break;
+		case 's':
+			cls.addAll(new int[] {' ', '\t', '\n', '\r', '\f'});
+			break;
+		default:
+			return false;
+		}
+		
+		pos++;
+		
+		if(Character.isUpperCase(ch)) {
+			for(int label : alphabet()) {
+				if(!cls.contains(label))
+					set.add(label);
+			}
+		} else {
+			set.addAll(cls);
+		}
+		
+		return true;
+	}
+	
+	static void addRange(TIntHashSet set, int from, int to) {
+		for(int i = from; i <= to; i++) {
+			set.add(i);
+		}
+	}
+	
+	/**
+	 * Parse class after '['
+	 */
+	int[] parseClass() {
+		boolean negated = accept('^');
+		TIntHashSet set = new TIntHashSet();
+		boolean first = true;
+		
+		while(true) {
+			if(!more())
+				throw error("Unterminated class");
+			
+			char ch = pattern.charAt(pos++);
+			
+			if(ch == ']' && !first)
+				break;
+			
+			first = false;
+			int from = ch;
+			
+			if(ch == '\\') {
+				if(parseClassEscape(set))
+					continue;
+				
+				from = parseEscape();
+			}
+			
+			if(pos + 1 < pattern.length() && peek() == '-' && pattern.charAt(pos + 1) != ']') {
+				pos++;
+				char toCh = pattern.charAt(pos++);
+				int to = toCh == '\\'? parseEscape() : toCh;
+				
+				if(to < from)
+					throw error("Invalid class range");
+				
+				addRange(set, from, to);
+			} else {
+				set.add(from);
+			}
+		}
+		
+		if(negated) {
+			TIntHashSet neg = new TIntHashSet();
+			
+			for(int label : alphabet()) {
+				if(!set.contains(label))
+					neg.add(label);
+			}
+			
+			set = neg;
+		}
+		
+		return sorted(set);
+	}
+	
+	static int[] sorted(TIntHashSet set) {
+		TIntArrayList list = new TIntArrayList(set.toArray());
+		list.sort();
+		return list.toArray();
+	}
+
+}
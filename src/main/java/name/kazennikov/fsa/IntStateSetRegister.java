@@ -0,0 +1,190 @@
+package name.kazennikov.fsa;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import name.kazennikov.dafsa.IntRegister;
+
+/**
+ * Register of state sets for the subset construction. Each set is a sorted
+ * array of NFA state numbers, the sets are stored in a flat int list and interned
+ * in a primitive hash table, so equal sets get the same number.
+ * 
+ * A set is built by calling begin(), then add() for each element in ascending order,
+ * and commit() which returns either number of equal registered set or the number
+ * of the new set.
+ *
+ */
+public class IntStateSetRegister {
+	TIntArrayList elements = new TIntArrayList();
+	TIntArrayList setStart = new TIntArrayList();
+	// cached set hash codes
+	TIntArrayList hashes = new TIntArrayList();
+	
+	/**
+	 * Register that compares sets by its content
+	 */
+	class Register extends IntRegister {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		public int hash(int set) {
+			return hashes.get(set);
+		}
+		
+		@Override
+		public boolean equals(int set1, int set2) {
+			if(set1 == set2)
+				return true;
+			
+			int start1 = setStart.get(set1);
+			int start2 = setStart.get(set2);
+			int count = setEnd(set1) - start1;
+			
+			if(count != setEnd(set2) - start2)
+				return false;
+			
+			for(int i = 0; i < count; i++) {
+				if(elements.get(start1 + i) != elements.get(start2 + i))
+					return false;
+			}
+			
+			return true;
+		}
+	}
+	
+	Register register = new Register();
+	
+	/**
+	 * Start building a new set
+	 */
+	public void begin() {
+		setStart.add(elements.size());
+	}
+	
+	/**
+	 * Add element to the set being built. Elements must be added in ascending order
+	 * 
+	 * @param element set element
+	 */
+	public void add(int element) {
+		elements.add(element);
+	}
+	
+	/**
+	 * Finish the set being built. If there is an equal set in the register,
+	 * the built set is discarded.
+	 * 
+	 * @return number of the registered set equal to the built one
+	 */
+	public int commit() {
+		int set = setStart.size() - 1;
+		hashes.add(computeHash(set));
+		int regSet = register.get(set);
+		
+		if(regSet != Constants.INVALID_STATE) {
+			int start = setStart.get(set);
+			elements.remove(start, elements.size() - start);
+			setStart.removeAt(set);
+			hashes.removeAt(set);
+			return regSet;
+		}
+		
+		register.add(set);
+		return set;
+	}
+	
+	/**
+	 * Intern given sorted set
+	 * 
+	 * @param set sorted set elements
+	 * 
+	 * @return set number
+	 */
+	public int intern(TIntList set) {
+		begin();
+		
+		for(int i = 0; i < set.size(); i++) {
+			add(set.get(i));
+		}
+		
+		return commit();
+	}
+	
+	/**
+	 * Find registered set equal to given sorted set, without registering it
+	 * 
+	 * @param set sorted set elements
+	 * 
+	 * @return set number, or -1 (INVALID_STATE) if there is no such set
+	 */
+	public int find(TIntList set) {
+		int start = elements.size();
+		begin();
+		
+		for(int i = 0; i < set.size(); i++) {
+			add(set.get(i));
+		}
+		
+		int built = setStart.size() - 1;
+		hashes.add(computeHash(built));
+		int regSet = register.get(built);
+		
+		elements.remove(start, elements.size() - start);
+		setStart.removeAt(built);
+		hashes.removeAt(built);
+		
+		return regSet;
+	}
+	
+	int computeHash(int set) {
+		int result = 1;
+		int end = setEnd(set);
+		
+		for(int i = setStart.get(set); i < end; i++) {
+			result = 31 * result + elements.get(i);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Number of registered sets
+	 */
+	public int size() {
+		return setStart.size();
+	}
+	
+	public int setStart(int set) {
+		return setStart.get(set);
+	}
+	
+	public int setEnd(int set) {
+		set++;
+		return set == setStart.size()? elements.size() : setStart.get(set);
+	}
+	
+	public int element(int index) {
+		return elements.get(index);
+	}
+	
+	/**
+	 * Get elements of the set
+	 * 
+	 * @param set set number
+	 */
+	public int[] toArray(int set) {
+		int start = setStart.get(set);
+		return elements.toArray(start, setEnd(set) - start);
+	}
+	
+	/**
+	 * Clear the register
+	 */
+	public void clear() {
+		elements.resetQuick();
+		setStart.resetQuick();
+		hashes.resetQuick();
+		register.clear();
+	}
+
+}
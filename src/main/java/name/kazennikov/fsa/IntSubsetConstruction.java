@@ -0,0 +1,245 @@
+package name.kazennikov.fsa;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Subset construction (determinization) of an epsilon-NFA over flat arrays.
+ * 
+ * The NFA is given as a transition table indexed by state number: transitions of state i
+ * are in range [stateStart[i], stateStart[i + 1]) of the labels and dest arrays.
+ * Transitions on {@link Constants#EPSILON} are epsilon transitions.
+ * 
+ * The DFA states are sorted NFA state sets, interned in the {@link IntStateSetRegister}.
+ * Epsilon closures of single NFA states are computed once and cached. DFA states are numbered
+ * in BFS order from the start state (0), the DFA transitions are produced
+ * in order of source state and label.
+ *
+ */
+public class IntSubsetConstruction {
+	final int stateCount;
+	final int[] stateStart;
+	final int[] labels;
+	final int[] dest;
+	
+	// cached epsilon closures of NFA states
+	final int[][] closures;
+	
+	IntStateSetRegister sets = new IntStateSetRegister();
+	
+	TIntArrayList dfaSrc = new TIntArrayList();
+	TIntArrayList dfaLabels = new TIntArrayList();
+	TIntArrayList dfaDest = new TIntArrayList();
+	
+	// visit marks, valid for current stamp
+	int[] marks;
+	int stamp;
+	TIntArrayList stack = new TIntArrayList();
+	TIntArrayList buf = new TIntArrayList();
+	TLongArrayList pairs = new TLongArrayList();
+	
+	/**
+	 * @param stateStart transition start offsets, stateCount + 1 elements
+	 * @param labels transition labels
+	 * @param dest transition destinations
+	 */
+	public IntSubsetConstruction(int[] stateStart, int[] labels, int[] dest) {
+		this.stateCount = stateStart.length - 1;
+		this.stateStart = stateStart;
+		this.labels = labels;
+		this.dest = dest;
+		this.closures = new int[stateCount][];
+		this.marks = new int[stateCount];
+	}
+	
+	/**
+	 * Worker over the NFA and the closure cache of given construction, with its own working data
+	 */
+	IntSubsetConstruction(IntSubsetConstruction nfa) {
+		this.stateCount = nfa.stateCount;
+		this.stateStart = nfa.stateStart;
+		this.labels = nfa.labels;
+		this.dest = nfa.dest;
+		this.closures = nfa.closures;
+		this.marks = new int[stateCount];
+	}
+	
+	int nextStamp() {
+		if(++stamp == 0) {
+			Arrays.fill(marks, 0);
+			stamp = 1;
+		}
+		
+		return stamp;
+	}
+	
+	/**
+	 * Epsilon closure of the NFA state
+	 * 
+	 * @param state NFA state
+	 * 
+	 * @return sorted array of states reachable from given state by epsilon transitions
+	 */
+	public int[] closure(int state) {
+		int[] closure = closures[state];
+		
+		if(closure != null)
+			return closure;
+		
+		int stamp = nextStamp();
+		buf.resetQuick();
+		stack.resetQuick();
+		stack.add(state);
+		marks[state] = stamp;
+		
+		while(!stack.isEmpty()) {
+			int s = stack.removeAt(stack.size() - 1);
+			buf.add(s);
+			
+			for(int i = stateStart[s]; i < stateStart[s + 1]; i++) {
+				if(labels[i] == Constants.EPSILON && marks[dest[i]] != stamp) {
+					marks[dest[i]] = stamp;
+					stack.add(dest[i]);
+				}
+			}
+		}
+		
+		buf.sort();
+		closure = buf.toArray();
+		closures[state] = closure;
+		return closure;
+	}
+	
+	/**
+	 * Compute union of epsilon closures of given NFA states
+	 * 
+	 * @param states NFA states
+	 * @param res sorted union of closures
+	 */
+	public void closure(TIntList states, TIntArrayList res) {
+		closure(states, 0, states.size(), res);
+	}
+	
+	void closure(TIntList states, int start, int end, TIntArrayList res) {
+		res.resetQuick();
+		
+		if(end - start == 1) {
+			res.add(closure(states.get(start)));
+			return;
+		}
+		
+		// closures are computed before taking the stamp as they use marks too
+		for(int i = start; i < end; i++) {
+			closure(states.get(i));
+		}
+
+		int stamp = nextStamp();
+
+		for(int i = start; i < end; i++) {
+			for(int s : closures[states.get(i)]) {
+				if(marks[s] != stamp) {
+					marks[s] = stamp;
+					res.add(s);
+				}
+			}
+		}
+		
+		res.sort();
+	}
+	
+	/**
+	 * Determinize the NFA from given start state
+	 * 
+	 * @param startState NFA start state
+	 */
+	public void run(int startState) {
+		sets.begin();
+		for(int s : closure(startState)) {
+			sets.add(s);
+		}
+		sets.commit();
+
+		TIntArrayList next = new TIntArrayList();
+		TIntArrayList nextSet = new TIntArrayList();
+		
+		// the DFA states are numbered in order of discovery, so the register is the queue
+		for(int set = 0; set < sets.size(); set++) {
+			pairs.resetQuick();
+			int end = sets.setEnd(set);
+			
+			for(int i = sets.setStart(set); i < end; i++) {
+				int s = sets.element(i);
+				
+				for(int j = stateStart[s]; j < stateStart[s + 1]; j++) {
+					if(labels[j] != Constants.EPSILON)
+						pairs.add(((long) labels[j] << 32) | dest[j]);
+				}
+			}
+			
+			pairs.sort();
+			int i = 0;
+			
+			while(i < pairs.size()) {
+				int label = (int) (pairs.get(i) >> 32);
+				next.resetQuick();
+				
+				for(; i < pairs.size() && (int) (pairs.get(i) >> 32) == label; i++) {
+					next.add((int) pairs.get(i));
+				}
+				
+				closure(next, nextSet);
+				int nextId = sets.intern(nextSet);
+				dfaSrc.add(set);
+				dfaLabels.add(label);
+				dfaDest.add(nextId);
+			}
+		}
+	}
+	
+	/**
+	 * Number of DFA states
+	 */
+	public int size() {
+		return sets.size();
+	}
+	
+	/**
+	 * DFA states as NFA state sets
+	 */
+	public IntStateSetRegister sets() {
+		return sets;
+	}
+	
+	/**
+	 * Number of DFA transitions
+	 */
+	public int transitionCount() {
+		return dfaSrc.size();
+	}
+	
+	public int src(int transitionIndex) {
+		return dfaSrc.get(transitionIndex);
+	}
+	
+	public int label(int transitionIndex) {
+		return dfaLabels.get(transitionIndex);
+	}
+	
+	public int dest(int transitionIndex) {
+		return dfaDest.get(transitionIndex);
+	}
+	
+	/**
+	 * Create minimizer of the constructed DFA
+	 * 
+	 * @param finalKeys final keys of the DFA states, 0 for non-final states
+	 */
+	public IntHopcroftMinimizer minimizer(int[] finalKeys) {
+		return new IntHopcroftMinimizer(size(), 0, dfaSrc.toArray(), dfaLabels.toArray(), dfaDest.toArray(), 
+				dfaSrc.size(), finalKeys);
+	}
+
+}
@@ -0,0 +1,298 @@
+package name.kazennikov.fsa;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lazy (on-the-fly) determinization of an epsilon-NFA. The DFA states are computed
+ * during matching and kept in a bounded cache, so only the states visited by the input
+ * are built. When the cache is full, it is flushed entirely (as in RE2), the current state is
+ * restored and the matching continues.
+ * 
+ * If the cache is flushed too often (less than thrashFactor * maxStates inputs processed
+ * since the previous flush) the DFA is considered thrashing and the matching of the current
+ * input falls back to the NFA simulation over state sets without caching.
+ * 
+ * Final values of a DFA state are union of the final values of its NFA states.
+ * The cache is mutable, so the object isn't thread-safe.
+ *
+ */
+public class LazyDFA {
+	public static final int DEFAULT_MAX_STATES = 10000;
+	public static final int DEFAULT_THRASH_FACTOR = 10;
+	public static final int[] EMPTY = new int[0];
+	
+	static final int DEAD = Constants.INVALID_STATE;
+	static final int UNKNOWN = -2;
+	
+	final IntSubsetConstruction nfa;
+	final int nfaStart;
+	final int[][] nfaFinals;
+	final int maxStates;
+	int thrashFactor = DEFAULT_THRASH_FACTOR;
+	
+	// cache
+	IntStateSetRegister sets = new IntStateSetRegister();
+	List<int[]> finals = new ArrayList<>();
+	TLongIntHashMap next = new TLongIntHashMap(1024, 0.5f, 0, UNKNOWN);
+	
+	int start = UNKNOWN;
+	
+	// matching state
+	int state;
+	boolean nfaMode;
+	TIntArrayList set = new TIntArrayList();
+	TIntArrayList nextSet = new TIntArrayList();
+	TIntArrayList targets = new TIntArrayList();
+	long sinceFlush;
+	
+	// stats
+	long flushes;
+	long fallbacks;
+	
+	/**
+	 * @param nfa NFA transition table
+	 * @param startState NFA start state
+	 * @param nfaFinals final values of NFA states, null or empty array for non-final states
+	 * @param maxStates maximum number of cached DFA states
+	 */
+	public LazyDFA(IntSubsetConstruction nfa, int startState, int[][] nfaFinals, int maxStates) {
+		this.nfa = nfa;
+		this.nfaStart = startState;
+		this.nfaFinals = nfaFinals;
+		this.maxStates = maxStates;
+	}
+	
+	public void setThrashFactor(int thrashFactor) {
+		this.thrashFactor = thrashFactor;
+	}
+	
+	/**
+	 * Intern state set as a DFA state
+	 */
+	int intern(TIntArrayList set) {
+		int size = sets.size();
+		int id = sets.intern(set);
+		
+		if(id == size)
+			finals.add(finals(set));
+		
+		return id;
+	}
+	
+	int[] finals(TIntList set) {
+		TIntHashSet values = null;
+		
+		for(int i = 0; i < set.size(); i++) {
+			int[] f = nfaFinals[set.get(i)];
+			
+			if(f == null || f.length == 0)
+				continue;
+			
+			if(values == null)
+				values = new TIntHashSet();
+			
+			values.addAll(f);
+		}
+		
+		if(values == null)
+			return EMPTY;
+		
+		int[] res = values.toArray();
+		Arrays.sort(res);
+		return res;
+	}
+	
+	/**
+	 * Flush the cache
+	 */
+	void flush() {
+		sets.clear();
+		finals.clear();
+		next.clear();
+		start = UNKNOWN;
+		flushes++;
+	}
+	
+	/**
+	 * Start matching from the NFA start state
+	 */
+	void reset() {
+		nfaMode = false;
+		
+		if(start == UNKNOWN) {
+			set.resetQuick();
+			set.add(nfa.closure(nfaStart));
+			start = intern(set);
+		}
+		
+		state = start;
+	}
+	
+	/**
+	 * Compute next NFA state set from the set into the nextSet
+	 */
+	void step(TIntList set, int label) {
+		targets.resetQuick();
+		
+		for(int i = 0; label != Constants.EPSILON && i < set.size(); i++) {
+			int s = set.get(i);
+			
+			for(int j = nfa.stateStart[s]; j < nfa.stateStart[s + 1]; j++) {
+				if(nfa.labels[j] == label)
+					targets.add(nfa.dest[j]);
+			}
+		}
+		
+		if(targets.isEmpty()) {
+			nextSet.resetQuick();
+			return;
+		}
+		
+		nfa.closure(targets, nextSet);
+	}
+	
+	/**
+	 * Advance the matching on the label
+	 * 
+	 * @return false if the dead state is reached
+	 */
+	boolean advance(int label) {
+		sinceFlush++;
+		
+		if(nfaMode) {
+			step(set, label);
+			TIntArrayList tmp = set;
+			set = nextSet;
+			nextSet = tmp;
+			return !set.isEmpty();
+		}
+		
+		long key = ((long) state << 32) | (label & 0xFFFFFFFFL);
+		int n = next.get(key);
+		
+		if(n == UNKNOWN) {
+			set.resetQuick();
+			set.add(sets.toArray(state));
+			step(set, label);
+			
+			if(nextSet.isEmpty()) {
+				n = DEAD;
+			} else if((n = sets.find(nextSet)) == Constants.INVALID_STATE) {
+				// the target is a new state, flush the full cache
+				if(sets.size() >= maxStates) {
+					boolean thrashing = flushes > 0 && sinceFlush < (long) thrashFactor * maxStates;
+					flush();
+					sinceFlush = 0;
+					
+					if(thrashing) {
+						fallbacks++;
+						nfaMode = true;
+						TIntArrayList tmp = set;
+						set = nextSet;
+						nextSet = tmp;
+						return true;
+					}
+					
+					// restore the current state as the cache key
+					state = intern(set);
+					key = ((long) state << 32) | (label & 0xFFFFFFFFL);
+				}
+				
+				n = intern(nextSet);
+			}
+			
+			next.put(key, n);
+		}
+		
+		state = n;
+		return n != DEAD;
+	}
+	
+	/**
+	 * Final values of the current matching state
+	 */
+	int[] currentFinals() {
+		return nfaMode? finals(set) : finals.get(state);
+	}
+	
+	boolean isCurrentFinal() {
+		return currentFinals().length != 0;
+	}
+	
+	/**
+	 * Match the whole input
+	 * 
+	 * @param input input labels
+	 * 
+	 * @return final values of the reached state, empty array if the input isn't accepted
+	 */
+	public int[] match(TIntList input) {
+		reset();
+		
+		for(int i = 0; i < input.size(); i++) {
+			if(!advance(input.get(i)))
+				return EMPTY;
+		}
+		
+		return currentFinals();
+	}
+	
+	/**
+	 * Check if the input is accepted by the automaton
+	 */
+	public boolean matches(TIntList input) {
+		return match(input).length != 0;
+	}
+	
+	/**
+	 * Find the longest accepted prefix of the input starting from given position
+	 * 
+	 * @param input input labels
+	 * @param start start position
+	 * 
+	 * @return end position of the longest accepted prefix, or -1 if no prefix is accepted
+	 */
+	public int longestMatch(TIntList input, int start) {
+		reset();
+		int end = isCurrentFinal()? start : -1;
+		
+		for(int i = start; i < input.size(); i++) {
+			if(!advance(input.get(i)))
+				break;
+			
+			if(isCurrentFinal())
+				end = i + 1;
+		}
+		
+		return end;
+	}
+	
+	/**
+	 * Number of cached DFA states
+	 */
+	public int cacheSize() {
+		return sets.size();
+	}
+	
+	/**
+	 * Number of cache flushes
+	 */
+	public long flushes() {
+		return flushes;
+	}
+	
+	/**
+	 * Number of fallbacks to the NFA simulation
+	 */
+	public long fallbacks() {
+		return fallbacks;
+	}
+
+}
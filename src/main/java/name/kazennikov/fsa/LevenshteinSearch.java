@@ -0,0 +1,226 @@
+package name.kazennikov.fsa;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fuzzy lookup: finds all words of the automaton within given edit distance of the query.
+ * 
+ * The automaton is traversed depth-first (with explicit stack) simultaneously with the Levenshtein
+ * automaton of the query. The Levenshtein automaton state is a row of the edit distance matrix
+ * restricted to the diagonal band of width 2k + 1, so each transition costs O(k).
+ * A branch is pruned as soon as all the band values exceed k. Optionally the transpositions
+ * of adjacent labels are counted as a single edit (optimal string alignment distance).
+ * 
+ * The found words are streamed to the callback. The traversal depth is bounded by
+ * query length + k, so the search terminates on cyclic automata too.
+ * 
+ * The search object holds working buffers, so it isn't thread-safe.
+ *
+ */
+public class LevenshteinSearch {
+	
+	/**
+	 * Search results receiver
+	 */
+	public static interface Callback {
+		/**
+		 * Process found word
+		 * 
+		 * @param word word labels, the buffer is reused, so it should be copied if needed
+		 * @param distance edit distance from the query
+		 * @param state final state of the word
+		 * 
+		 * @return true to continue the search, false to stop it
+		 */
+		public boolean accept(TIntList word, int distance, int state);
+	}
+	
+	final IntFSAView fsa;
+	boolean transpositions;
+	
+	// working data, indexed by depth
+	int[] rows = new int[0];
+	int[] states = new int[0];
+	int[] transitions = new int[0];
+	TIntArrayList word = new TIntArrayList();
+	
+	public LevenshteinSearch(IntFSAView fsa) {
+		this.fsa = fsa;
+	}
+	
+	/**
+	 * Count transposition of adjacent labels as a single edit
+	 */
+	public void setTranspositions(boolean transpositions) {
+		this.transpositions = transpositions;
+	}
+	
+	void ensureDepth(int depth, int width) {
+		if(states.length <= depth) {
+			int size = Math.max(depth + 1, states.length * 2);
+			states = Arrays.copyOf(states, size);
+			transitions = Arrays.copyOf(transitions, size);
+		}
+		
+		if(rows.length < (depth + 1) * width)
+			rows = Arrays.copyOf(rows, Math.max((depth + 1) * width, rows.length * 2));
+	}
+	
+	/**
+	 * Compute the band of the row of given depth from the previous rows
+	 * 
+	 * @return minimal value of the band
+	 */
+	int computeRow(TIntList query, int k, int depth, int label) {
+		int n = query.size();
+		int width = n + 1;
+		int row = depth * width;
+		int prev = row - width;
+		int lo = Math.max(0, depth - k);
+		int hi = Math.min(n, depth + k);
+		int min = k + 1;
+		
+		// boundaries of the band, read by the deletion below and by the next row
+		if(lo > 0)
+			rows[row + lo - 1] = k + 1;
+		
+		if(hi < n)
+			rows[row + hi + 1] = k + 1;
+		
+		for(int i = lo; i <= hi; i++) {
+			int value = rows[prev + i] + 1; // insertion of the label
+			
+			if(i > 0) {
+				value = Math.min(value, rows[row + i - 1] + 1); // deletion of query label
+				value = Math.min(value, rows[prev + i - 1] + (query.get(i - 1) == label? 0 : 1));
+				
+				if(transpositions && i > 1 && depth > 1 && query.get(i - 2) == label 
+						&& query.get(i - 1) == word.get(depth - 2))
+					value = Math.min(value, rows[prev - width + i - 2] + 1);
+			}
+			
+			rows[row + i] = value;
+			min = Math.min(min, value);
+		}
+		
+		return min;
+	}
+	
+	/**
+	 * Find words within edit distance k of the query
+	 * 
+	 * @param query query labels
+	 * @param k maximum edit distance
+	 * @param limit maximum number of results, 0 for none, -1 for unlimited
+	 * @param callback results receiver
+	 * 
+	 * @return number of found words
+	 */
+	public int search(TIntList query, int k, int limit, Callback callback) {
+		int n = query.size();
+		int width = n + 1;
+		int maxDepth = n + k;
+		int found = 0;
+		
+		if(limit == 0)
+			return found;
+		
+		ensureDepth(0, width);
+		
+		for(int i = 0; i <= n; i++) {
+			rows[i] = Math.min(i, k + 1);
+		}
+		
+		word.resetQuick();
+		int depth = 0;
+		states[0] = fsa.getStartState();
+		transitions[0] = 0;
+		
+		if(fsa.isFinalState(states[0]) && rows[n] <= k) {
+			found++;
+			
+			if(!callback.accept(word, rows[n], states[0]) || found == limit)
+				return found;
+		}
+		
+		while(depth >= 0) {
+			int state = states[depth];
+			
+			if(depth == maxDepth || transitions[depth] == fsa.getTransitionCount(state)) {
+				depth--;
+				
+				if(depth >= 0)
+					word.removeAt(depth);
+				
+				continue;
+			}
+			
+			int index = transitions[depth]++;
+			int label = fsa.getTransitionInput(state, index);
+			int next = fsa.getTransitionNext(state, index);
+			
+			ensureDepth(depth + 1, width);
+			word.add(label);
+			
+			if(computeRow(query, k, depth + 1, label) > k) {
+				word.removeAt(depth);
+				continue;
+			}
+			
+			depth++;
+			states[depth] = next;
+			transitions[depth] = 0;
+			
+			// the last column is outside the band if the word is too short
+			if(n - depth <= k && rows[depth * width + n] <= k && fsa.isFinalState(next)) {
+				found++;
+				
+				if(!callback.accept(word, rows[depth * width + n], next) || found == limit)
+					return found;
+			}
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * Find words within edit distance k of the query. Labels are chars
+	 * 
+	 * @param query query string
+	 * @param k maximum edit distance
+	 * @param limit maximum number of results, 0 for none, -1 for unlimited
+	 * 
+	 * @return found words
+	 */
+	public List<String> search(CharSequence query, int k, int limit) {
+		TIntArrayList q = new TIntArrayList(query.length());
+		
+		for(int i = 0; i < query.length(); i++) {
+			q.add(query.charAt(i));
+		}
+		
+		final List<String> res = new ArrayList<String>();
+		
+		search(q, k, limit, new Callback() {
+			@Override
+			public boolean accept(TIntList word, int distance, int state) {
+				StringBuilder sb = new StringBuilder(word.size());
+				
+				for(int i = 0; i < word.size(); i++) {
+					sb.append((char) word.get(i));
+				}
+				
+				res.add(sb.toString());
+				return true;
+			}
+		});
+		
+		return res;
+	}
+
+}
@@ -0,0 +1,6 @@
+package name.kazennikov.fsa;
+
+public interface LongFSABooleanEventHandler extends LongFSAEventHandler {
+	public void setFinalValue(boolean finalValue);
+
+}
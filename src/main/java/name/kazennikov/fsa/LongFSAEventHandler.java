@@ -0,0 +1,38 @@
+package name.kazennikov.fsa;
+
+/**
+ * Event-based interface to FSA with long labels. It is the {@link IntFSAEventHandler}
+ * counterpart for automata over long sequences (e.g. token ids).
+ * 
+ * Current interface assumes that there is some other method that will set internal final value
+ * before setFinal() is called
+ *
+ */
+public interface LongFSAEventHandler {
+	/**
+	 * Announce that that current state changed to given state number.
+	 * This also resets the final value stored by events processor
+	 * @param state state number
+	 */
+	public void startState(int state);
+
+	/**
+	 * Set final value of the current state
+	 */
+	public void setFinal();
+
+	/**
+	 * Add transition to current state
+	 * 
+	 * @param label input label
+	 * @param destState destination state number
+	 */
+	public void addTransition(long label, int destState);
+	
+	/**
+	 * Announce end of current state - at this point current state is fully built and
+	 * will be not changed by the writing algorithm
+	 */
+	public void endState();
+
+}
@@ -0,0 +1,176 @@
+package name.kazennikov.fsa;
+
+import gnu.trove.impl.hash.THash;
+
+/**
+ * Memory footprint of an automaton, broken down by parts. Each part
+ * has element count and size in bytes.
+ * 
+ * The sizes are computed for 64-bit JVM with compressed oops (12-byte object headers,
+ * 4-byte references, 8-byte alignment). The sizes of list-backed structures are computed
+ * by the number of elements, so the growth slack of not trimmed lists isn't counted.
+ *
+ */
+public class MemoryFootprint {
+	public static final int OBJECT_HEADER = 12;
+	public static final int ARRAY_HEADER = 16;
+	public static final int REFERENCE = 4;
+	public static final int ALIGNMENT = 8;
+	
+	/**
+	 * Footprint parts
+	 */
+	public static enum Part {
+		/**
+		 * State objects and state index
+		 */
+		STATES,
+		/**
+		 * Transition tables
+		 */
+		TRANSITIONS,
+		/**
+		 * Final values
+		 */
+		FINALS,
+		/**
+		 * Register of the minimal states, used only during construction
+		 */
+		REGISTER,
+		/**
+		 * Allocated, but unused memory
+		 */
+		OVERHEAD
+	}
+	
+	long[] counts = new long[Part.values().length];
+	long[] bytes = new long[Part.values().length];
+	
+	/**
+	 * Add elements to the footprint part
+	 * 
+	 * @param part footprint part
+	 * @param count number of elements
+	 * @param bytes size of the elements in bytes
+	 * 
+	 * @return this footprint
+	 */
+	public MemoryFootprint add(Part part, long count, long bytes) {
+		this.counts[part.ordinal()] += count;
+		this.bytes[part.ordinal()] += bytes;
+		return this;
+	}
+	
+	/**
+	 * Add other footprint to this one
+	 */
+	public MemoryFootprint add(MemoryFootprint other) {
+		for(int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+			bytes[i] += other.bytes[i];
+		}
+		
+		return this;
+	}
+	
+	public long count(Part part) {
+		return counts[part.ordinal()];
+	}
+	
+	public long bytes(Part part) {
+		return bytes[part.ordinal()];
+	}
+	
+	/**
+	 * Total size in bytes
+	 */
+	public long totalBytes() {
+		long total = 0;
+		
+		for(long b : bytes) {
+			total += b;
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * Align size to the object alignment
+	 */
+	public static long align(long size) {
+		return (size + ALIGNMENT - 1) & -ALIGNMENT;
+	}
+	
+	/**
+	 * Size of an object with given size of fields
+	 * 
+	 * @param fieldBytes total size of the object fields
+	 */
+	public static long object(long fieldBytes) {
+		return align(OBJECT_HEADER + fieldBytes);
+	}
+	
+	/**
+	 * Size of an array
+	 * 
+	 * @param length array length
+	 * @param elementSize size of the element in bytes
+	 */
+	public static long array(long length, int elementSize) {
+		return align(ARRAY_HEADER + length * elementSize);
+	}
+	
+	/**
+	 * Size of a Trove primitive list: list object and backing array
+	 * 
+	 * @param length list length
+	 * @param elementSize size of the element in bytes
+	 */
+	public static long troveList(long length, int elementSize) {
+		return object(REFERENCE + 4 + 8) + array(length, elementSize);
+	}
+	
+	/**
+	 * Size of a Trove primitive hash set or map: object, key (and value) arrays and state array
+	 * 
+	 * @param hash hash object
+	 * @param entrySize size of the entry (key and value) in bytes
+	 */
+	public static long troveHash(THash hash, int entrySize) {
+		return object(32) + array(hash.capacity(), entrySize) + array(hash.capacity(), 1);
+	}
+	
+	/**
+	 * Size of an ArrayList with given number of elements, without elements themselves
+	 */
+	public static long arrayList(long size) {
+		return object(REFERENCE + 8) + array(size, REFERENCE);
+	}
+	
+	/**
+	 * Size of a java.util.HashMap with given number of entries, without keys and values
+	 */
+	public static long hashMap(long size) {
+		long capacity = Long.highestOneBit(Math.max(1, (long) (size / 0.75f) + 1) * 2 - 1);
+		long node = object(4 + 3 * REFERENCE);
+		return object(4 * REFERENCE + 16) + array(capacity, REFERENCE) + size * node;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		
+		for(Part part : Part.values()) {
+			if(counts[part.ordinal()] == 0 && bytes[part.ordinal()] == 0)
+				continue;
+			
+			sb.append(part.name().toLowerCase()).append('=')
+			.append(counts[part.ordinal()]).append('/').append(bytes[part.ordinal()]).append("B, ");
+		}
+		
+		sb.append("total=").append(totalBytes()).append('B');
+		
+		return sb.toString();
+	}
+
+}
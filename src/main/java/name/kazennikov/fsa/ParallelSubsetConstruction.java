@@ -0,0 +1,269 @@
+package name.kazennikov.fsa;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel subset construction on a {@link ForkJoinPool}. The DFA is built level by level
+ * (BFS): the frontier states are expanded concurrently and the target state sets are interned
+ * in a concurrent table. Then the new sets are numbered sequentially in order of the frontier
+ * and labels, so the result (numbering and transition order) is exactly the same as of
+ * the sequential {@link IntSubsetConstruction}.
+ * 
+ * Epsilon closures of all NFA states are computed in parallel beforehand, so they
+ * are read-only during the expansion.
+ *
+ */
+public class ParallelSubsetConstruction extends IntSubsetConstruction {
+	public static final int DEFAULT_THRESHOLD = 64;
+	
+	final ForkJoinPool pool;
+	int threshold = DEFAULT_THRESHOLD;
+	
+	/**
+	 * Interned NFA state set
+	 */
+	static class StateSet {
+		final int[] elements;
+		final int hash;
+		// DFA state number, assigned in the sequential numbering phase
+		int id = -1;
+		
+		StateSet(int[] elements) {
+			this.elements = elements;
+			this.hash = Arrays.hashCode(elements);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof StateSet))
+				return false;
+			
+			StateSet other = (StateSet) obj;
+			return hash == other.hash && Arrays.equals(elements, other.elements);
+		}
+	}
+	
+	/**
+	 * Working data of a task. Closures are computed by a worker over the shared closure cache,
+	 * each cache entry is written by the single closure task of its state
+	 */
+	class Scratch {
+		final IntSubsetConstruction worker = new IntSubsetConstruction(ParallelSubsetConstruction.this);
+		TIntArrayList buf = new TIntArrayList();
+		TIntArrayList targets = new TIntArrayList();
+		TLongArrayList pairs = new TLongArrayList();
+		
+		/**
+		 * Expand the DFA state: compute its transitions
+		 */
+		void expand(int index) {
+			int[] set = frontier.get(index).elements;
+			pairs.resetQuick();
+			
+			for(int s : set) {
+				for(int j = stateStart[s]; j < stateStart[s + 1]; j++) {
+					if(labels[j] != Constants.EPSILON)
+						pairs.add(((long) labels[j] << 32) | dest[j]);
+				}
+			}
+			
+			pairs.sort();
+			TIntArrayList outLabels = new TIntArrayList();
+			List<StateSet> outTargets = new ArrayList<>();
+			int i = 0;
+			
+			while(i < pairs.size()) {
+				int label = (int) (pairs.get(i) >> 32);
+				targets.resetQuick();
+				
+				for(; i < pairs.size() && (int) (pairs.get(i) >> 32) == label; i++) {
+					targets.add((int) pairs.get(i));
+				}
+				
+				worker.closure(targets, buf);
+				StateSet next = new StateSet(buf.toArray());
+				StateSet canonical = table.putIfAbsent(next, next);
+				
+				outLabels.add(label);
+				outTargets.add(canonical != null? canonical : next);
+			}
+			
+			resultLabels[index] = outLabels;
+			resultTargets.set(index, outTargets);
+		}
+	}
+	
+	/**
+	 * Task over a range of items, split in halves until the threshold
+	 */
+	abstract class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		final int from;
+		final int to;
+		
+		RangeTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+		
+		abstract RangeTask create(int from, int to);
+		
+		abstract void process(Scratch scratch, int index);
+		
+		@Override
+		protected void compute() {
+			if(to - from <= threshold) {
+				Scratch s = scratches.poll();
+				
+				if(s == null)
+					s = new Scratch();
+				
+				for(int i = from; i < to; i++) {
+					process(s, i);
+				}
+				
+				scratches.offer(s);
+				return;
+			}
+			
+			int mid = (from + to) >>> 1;
+			invokeAll(create(from, mid), create(mid, to));
+		}
+	}
+	
+	class ClosureTask extends RangeTask {
+		private static final long serialVersionUID = 1L;
+		
+		ClosureTask(int from, int to) {
+			super(from, to);
+		}
+
+		@Override
+		RangeTask create(int from, int to) {
+			return new ClosureTask(from, to);
+		}
+
+		@Override
+		void process(Scratch scratch, int index) {
+			scratch.worker.closure(index);
+		}
+	}
+	
+	class ExpandTask extends RangeTask {
+		private static final long serialVersionUID = 1L;
+		
+		ExpandTask(int from, int to) {
+			super(from, to);
+		}
+
+		@Override
+		RangeTask create(int from, int to) {
+			return new ExpandTask(from, to);
+		}
+
+		@Override
+		void process(Scratch scratch, int index) {
+			scratch.expand(index);
+		}
+	}
+	
+	ConcurrentHashMap<StateSet, StateSet> table = new ConcurrentHashMap<>();
+	// idle working data of the tasks, at most one per concurrently running task
+	ConcurrentLinkedQueue<Scratch> scratches = new ConcurrentLinkedQueue<>();
+	List<StateSet> frontier = new ArrayList<>();
+	TIntArrayList[] resultLabels;
+	List<List<StateSet>> resultTargets;
+	
+	/**
+	 * @param stateStart transition start offsets, stateCount + 1 elements
+	 * @param labels transition labels
+	 * @param dest transition destinations
+	 * @param pool fork-join pool for the construction
+	 */
+	public ParallelSubsetConstruction(int[] stateStart, int[] labels, int[] dest, ForkJoinPool pool) {
+		super(stateStart, labels, dest);
+		this.pool = pool;
+	}
+	
+	/**
+	 * Set minimal number of states processed by a single task
+	 */
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+	
+	void register(StateSet set) {
+		set.id = sets.size();
+		sets.begin();
+		
+		for(int s : set.elements) {
+			sets.add(s);
+		}
+		
+		sets.commit();
+	}
+	
+	@Override
+	public void run(int startState) {
+		pool.invoke(new ClosureTask(0, stateCount));
+		
+		StateSet start = new StateSet(closures[startState]);
+		table.put(start, start);
+		register(start);
+		frontier.add(start);
+		
+		while(!frontier.isEmpty()) {
+			resultLabels = new TIntArrayList[frontier.size()];
+			resultTargets = new ArrayList<>(Collections.<List<StateSet>>nCopies(frontier.size(), null));
+			pool.invoke(new ExpandTask(0, frontier.size()));
+			
+			List<StateSet> next = new ArrayList<>();
+			
+			// sequential numbering in the same order as the sequential construction
+			for(int i = 0; i < frontier.size(); i++) {
+				int src = frontier.get(i).id;
+				TIntArrayList outLabels = resultLabels[i];
+				List<StateSet> outTargets = resultTargets.get(i);
+				
+				for(int j = 0; j < outLabels.size(); j++) {
+					StateSet target = outTargets.get(j);
+					
+					if(target.id == -1) {
+						register(target);
+						next.add(target);
+					}
+					
+					dfaSrc.add(src);
+					dfaLabels.add(outLabels.get(j));
+					dfaDest.add(target.id);
+				}
+			}
+			
+			frontier = next;
+		}
+		
+		table.clear();
+		scratches.clear();
+		resultLabels = null;
+		resultTargets = null;
+	}
+
+}
@@ -0,0 +1,193 @@
+package name.kazennikov.fsa;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Depth-first enumeration of the final states reachable from given state with explicit stack.
+ * The cursor stops at each reached final state and exposes the labels of the path to it.
+ * 
+ * The labels could be recorded from the start, or only after the annotation label is passed
+ * (the annotation data of the dictionaries that store the word, the annotation label and the annotation).
+ * The annotation label itself isn't recorded.
+ * 
+ * The enumeration doesn't allocate after the stack has grown to the maximal depth, each transition
+ * is taken once and costs O(1). The enumeration could be stopped at any moment, so the cursor could
+ * be used with cyclic automata if the number of results is limited by the caller.
+ * 
+ * Usage:
+ * <pre>
+ * cursor.reset(state, true, buf);
+ * while(cursor.next()) {
+ *     process(cursor.data());
+ * }
+ * </pre>
+ *
+ */
+public class SuffixCursor {
+	final IntFSAView fsa;
+	final int annotationLabel;
+	
+	int[] states = new int[16];
+	int[] transitions = new int[16];
+	int depth = -1;
+	
+	// depth of the first state after the annotation label, -1 if it isn't passed yet
+	int annotDepth;
+	boolean atRoot;
+	
+	TIntArrayList data;
+	int dataStart;
+	TIntArrayList buf = new TIntArrayList();
+	
+	/**
+	 * @param fsa automaton
+	 * @param annotationLabel label that separates the annotation data
+	 */
+	public SuffixCursor(IntFSAView fsa, int annotationLabel) {
+		this.fsa = fsa;
+		this.annotationLabel = annotationLabel;
+	}
+	
+	public SuffixCursor(IntFSAView fsa) {
+		this(fsa, Constants.EPSILON);
+	}
+	
+	/**
+	 * Start enumeration from the state
+	 * 
+	 * @param state start state
+	 * @param record record labels from the start, if false, only labels after the annotation label are recorded
+	 * @param data buffer for the recorded labels. The labels are appended to the current buffer content
+	 */
+	public void reset(int state, boolean record, TIntArrayList data) {
+		this.data = data;
+		this.dataStart = data.size();
+		depth = 0;
+		states[0] = state;
+		transitions[0] = 0;
+		annotDepth = record? 0 : -1;
+		atRoot = true;
+	}
+	
+	/**
+	 * Start enumeration from the state, recording all labels to own buffer
+	 */
+	public void reset(int state) {
+		buf.resetQuick();
+		reset(state, true, buf);
+	}
+	
+	boolean recording(int d) {
+		return annotDepth != -1 && d >= annotDepth;
+	}
+	
+	/**
+	 * Leave the state at the top of the stack
+	 */
+	void pop() {
+		if(depth > 0 && recording(depth - 1))
+			data.removeAt(data.size() - 1);
+		
+		if(annotDepth == depth && depth > 0)
+			annotDepth = -1;
+		
+		depth--;
+	}
+	
+	/**
+	 * Advance to the next reachable final state
+	 * 
+	 * @return false if the enumeration is finished
+	 */
+	public boolean next() {
+		if(atRoot) {
+			atRoot = false;
+			
+			if(fsa.isFinalState(states[0]))
+				return true;
+		}
+		
+		while(depth >= 0) {
+			int state = states[depth];
+			
+			if(transitions[depth] == fsa.getTransitionCount(state)) {
+				pop();
+				continue;
+			}
+			
+			int index = transitions[depth]++;
+			int label = fsa.getTransitionInput(state, index);
+			int next = fsa.getTransitionNext(state, index);
+			
+			if(recording(depth)) {
+				data.add(label);
+			} else if(annotDepth == -1 && label == annotationLabel) {
+				annotDepth = depth + 1;
+			}
+			
+			depth++;
+			
+			if(depth == states.length) {
+				states = Arrays.copyOf(states, depth * 2);
+				transitions = Arrays.copyOf(transitions, depth * 2);
+			}
+			
+			states[depth] = next;
+			transitions[depth] = 0;
+			
+			if(fsa.isFinalState(next))
+				return true;
+		}
+		
+		finish();
+		return false;
+	}
+	
+	/**
+	 * Stop the enumeration and restore the data buffer content
+	 */
+	public void finish() {
+		depth = -1;
+		atRoot = false;
+		data.remove(dataStart, data.size() - dataStart);
+	}
+	
+	/**
+	 * Don't enumerate the states below the current state
+	 */
+	public void skipSubtree() {
+		if(depth >= 0)
+			transitions[depth] = fsa.getTransitionCount(states[depth]);
+	}
+	
+	/**
+	 * Current state
+	 */
+	public int state() {
+		return states[depth];
+	}
+	
+	/**
+	 * Depth of the current state relative to the start state
+	 */
+	public int depth() {
+		return depth;
+	}
+	
+	/**
+	 * Checks if the annotation label is passed on the path to the current state
+	 */
+	public boolean passedAnnotation() {
+		return annotDepth != -1;
+	}
+	
+	/**
+	 * Buffer with the recorded labels. The buffer is modified by next()
+	 */
+	public TIntArrayList data() {
+		return data;
+	}
+
+}
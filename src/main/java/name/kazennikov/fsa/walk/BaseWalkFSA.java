@@ -1,6 +1,10 @@
 package name.kazennikov.fsa.walk;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,6 +15,7 @@ import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
 import name.kazennikov.dafsa.TroveUtils;
 import name.kazennikov.fsa.Constants;
+import name.kazennikov.fsa.MemoryFootprint;
 
 public class BaseWalkFSA implements Serializable {
 	private static final long serialVersionUID = 1L;
@@ -75,6 +80,79 @@ public class BaseWalkFSA implements Serializable {
     public int size() {
     	return stateStart.size();
     }
+    
+    public int getStartState() {
+    	return 0;
+    }
+    
+    public int getNext(int state, int input) {
+    	return next(state, input);
+    }
+    
+    public int getTransitionCount(int state) {
+    	return stateEnd(state) - stateStart(state);
+    }
+    
+    public int getTransitionInput(int state, int transitionIndex) {
+    	return labels.get(stateStart(state) + transitionIndex);
+    }
+    
+    public int getTransitionNext(int state, int transitionIndex) {
+    	return dest.get(stateStart(state) + transitionIndex);
+    }
+
+    /**
+     * Compute memory footprint of the walker
+     */
+    public MemoryFootprint footprint() {
+        return new MemoryFootprint()
+                .add(MemoryFootprint.Part.STATES, stateStart.size(), MemoryFootprint.troveList(stateStart.size(), 4))
+                .add(MemoryFootprint.Part.TRANSITIONS, labels.size(),
+                        MemoryFootprint.troveList(labels.size(), 4) + MemoryFootprint.troveList(dest.size(), 4));
+    }
+
+    /**
+     * Estimate footprint of the state and transition tables of a walker
+     * @param stateCount number of states
+     * @param transitionCount number of transitions
+     */
+    protected static MemoryFootprint estimateTable(int stateCount, int transitionCount) {
+        return new MemoryFootprint()
+                .add(MemoryFootprint.Part.STATES, stateCount, MemoryFootprint.troveList(stateCount, 4))
+                .add(MemoryFootprint.Part.TRANSITIONS, transitionCount, 2 * MemoryFootprint.troveList(transitionCount, 4));
+    }
+
+    /**
+     * Read int section from the file
+     * @param channel source channel
+     * @param pos section position in bytes
+     * @param count number of ints to read
+     */
+    protected static int[] readInts(FileChannel channel, long pos, int count) throws IOException {
+        int[] res = new int[count];
+        ByteBuffer buf = ByteBuffer.allocateDirect(IntSectionWriter.DEFAULT_BUFFER_SIZE);
+        int offset = 0;
+
+        while(offset < count) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), 4L * (count - offset)));
+
+            while(buf.hasRemaining()) {
+                int read = channel.read(buf, pos);
+                if(read < 0)
+                    throw new IOException("Unexpected end of file");
+                pos += read;
+            }
+
+            buf.flip();
+            IntBuffer ints = buf.asIntBuffer();
+            int n = ints.remaining();
+            ints.get(res, offset, n);
+            offset += n;
+        }
+
+        return res;
+    }
 
     public TIntArrayList walk(TIntArrayList res, int state, CharSequence s, int start, int end) {
 
@@ -0,0 +1,150 @@
+package name.kazennikov.fsa.walk;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import name.kazennikov.dafsa.TroveUtils;
+import name.kazennikov.fsa.IntFSAEventHandler;
+
+/**
+ * Base class for writing walkers to the file directly from the event stream, without
+ * building them in memory. The walker file consists of the header and int sections:
+ * <ul>
+ * <li> state starts
+ * <li> transition labels
+ * <li> transition destinations
+ * <li> final value sections, specific to the walker type
+ * </ul>
+ * All sections are written simultaneously by batches, so the event stream should announce
+ * states in order 0..stateCount-1 and the state and transition counts must be known beforehand.
+ * The transitions of each state are sorted by label, as the walker uses binary search.
+ */
+public abstract class BaseWalkFSAFileBuilder implements IntFSAEventHandler {
+	protected final FileChannel channel;
+	protected final int headerSize;
+	protected final int stateCount;
+	protected final int transitionCount;
+
+	IntSectionWriter starts;
+	IntSectionWriter labels;
+	IntSectionWriter dest;
+
+	TIntArrayList stateLabels = new TIntArrayList();
+	TIntArrayList stateDest = new TIntArrayList();
+
+	protected int state = -1;
+	int transitions;
+
+	/**
+	 * @param channel target channel
+	 * @param headerSize header size in bytes
+	 * @param stateCount number of states
+	 * @param transitionCount number of transitions
+	 */
+	protected BaseWalkFSAFileBuilder(FileChannel channel, int headerSize, int stateCount, int transitionCount) {
+		this.channel = channel;
+		this.headerSize = headerSize;
+		this.stateCount = stateCount;
+		this.transitionCount = transitionCount;
+
+		long pos = headerSize;
+		starts = new IntSectionWriter(channel, pos);
+		pos += 4L * stateCount;
+		labels = new IntSectionWriter(channel, pos);
+		pos += 4L * transitionCount;
+		dest = new IntSectionWriter(channel, pos);
+	}
+
+	/**
+	 * Position of the first section after the transition table
+	 */
+	protected long finalsPosition() {
+		return headerSize + 4L * stateCount + 8L * transitionCount;
+	}
+
+	@Override
+	public void startState(int state) {
+		if(state != this.state + 1)
+			throw new IllegalStateException("States must be started in sequential order");
+
+		put(starts, transitions);
+		this.state = state;
+		stateLabels.resetQuick();
+		stateDest.resetQuick();
+	}
+
+	@Override
+	public void addTransition(int label, int destState) {
+		stateLabels.add(label);
+		stateDest.add(destState);
+	}
+
+	@Override
+	public void endState() {
+		// insertion sort by label, state fan-out is small
+		for(int i = 1; i < stateLabels.size(); i++) {
+			for(int j = i; j > 0 && stateLabels.get(j - 1) > stateLabels.get(j); j--) {
+				TroveUtils.swap(stateLabels, j - 1, j);
+				TroveUtils.swap(stateDest, j - 1, j);
+			}
+		}
+
+		for(int i = 0; i < stateLabels.size(); i++) {
+			put(labels, stateLabels.get(i));
+			put(dest, stateDest.get(i));
+		}
+
+		transitions += stateLabels.size();
+	}
+
+	/**
+	 * Put value to the section from event handler method
+	 */
+	protected static void put(IntSectionWriter section, int value) {
+		try {
+			section.put(value);
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Flush the final value sections
+	 */
+	protected abstract void finishFinals() throws IOException;
+
+	/**
+	 * Header of the file, written on finish()
+	 */
+	protected abstract int[] header();
+
+	/**
+	 * Flush all sections and write header
+	 */
+	public void finish() throws IOException {
+		if(state + 1 != stateCount || transitions != transitionCount)
+			throw new IllegalStateException(String.format("Expected %d states and %d transitions, got %d and %d",
+					stateCount, transitionCount, state + 1, transitions));
+
+		starts.flush();
+		labels.flush();
+		dest.flush();
+		finishFinals();
+
+		int[] header = header();
+		ByteBuffer buf = ByteBuffer.allocate(header.length * 4);
+		for(int value : header) {
+			buf.putInt(value);
+		}
+		buf.flip();
+
+		long pos = 0;
+		while(buf.hasRemaining()) {
+			pos += channel.write(buf, pos);
+		}
+	}
+
+}
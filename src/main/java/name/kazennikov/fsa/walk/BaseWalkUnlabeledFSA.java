@@ -6,28 +6,47 @@ import cern.colt.function.IntComparator;
 import gnu.trove.list.array.TIntArrayList;
 import name.kazennikov.dafsa.TroveUtils;
 import name.kazennikov.fsa.Constants;
+import name.kazennikov.fsa.MemoryFootprint;
 
+/**
+ * Base walker of the unlabeled FSA: the input is matched against the data of the destination state.
+ * The destination data is copied to the transition table as its label, so the transitions
+ * of a state are sorted by it and searched by binary search as in {@link BaseWalkFSA}
+ */
 public class BaseWalkUnlabeledFSA {
 	TIntArrayList dest = new TIntArrayList();
+	// data of the destination state of each transition
+	TIntArrayList labels = new TIntArrayList();
 	TIntArrayList data = new TIntArrayList();
 	
 	TIntArrayList stateStart = new TIntArrayList();
 	
 	
 	public int next(int src, int input) {
-		for(int i = stateStart(src); i < stateEnd(src); i++) {
-			int dest = this.dest.get(i);
-			if(data.get(dest) == input)
-				return dest;
-		}
-		
-		return Constants.INVALID_STATE;
+		int index = labels.binarySearch(input, stateStart(src), stateEnd(src));
+		return index < 0? Constants.INVALID_STATE : dest.get(index);
 	}	
 	
 	public int dest(int transitionIndex) {
 		return dest.get(transitionIndex);
 	}
 	
+	public int label(int transitionIndex) {
+		return labels.get(transitionIndex);
+	}
+	
+	public int size() {
+		return stateStart.size();
+	}
+	
+	public int getStartState() {
+		return 0;
+	}
+	
+	public int getTransitionCount(int state) {
+		return stateEnd(state) - stateStart(state);
+	}
+	
 	public int stateStart(int state) {
 		return stateStart.get(state);
 	}
@@ -40,8 +59,40 @@ public class BaseWalkUnlabeledFSA {
 		state++;
 		return state == stateStart.size()? dest.size() : stateStart.get(state);
 	}
+	
+	/**
+	 * Compute memory footprint of the walker
+	 */
+	public MemoryFootprint footprint() {
+		return new MemoryFootprint()
+				.add(MemoryFootprint.Part.STATES, stateStart.size(), 
+						MemoryFootprint.troveList(stateStart.size(), 4) + MemoryFootprint.troveList(data.size(), 4))
+				.add(MemoryFootprint.Part.TRANSITIONS, dest.size(), 
+						MemoryFootprint.troveList(dest.size(), 4) + MemoryFootprint.troveList(labels.size(), 4));
+	}
+	
+	/**
+	 * Estimate footprint of the state and transition tables of a walker
+	 * @param stateCount number of states
+	 * @param transitionCount number of transitions
+	 */
+	protected static MemoryFootprint estimateTable(int stateCount, int transitionCount) {
+		return new MemoryFootprint()
+				.add(MemoryFootprint.Part.STATES, stateCount, 2 * MemoryFootprint.troveList(stateCount, 4))
+				.add(MemoryFootprint.Part.TRANSITIONS, transitionCount, 2 * MemoryFootprint.troveList(transitionCount, 4));
+	}
 
+    /**
+     * Copy the destination data to the transition labels and sort the transitions
+     * of each state by them
+     */
     public void sortTransitions() {
+        labels.resetQuick();
+
+        for(int i = 0; i < dest.size(); i++) {
+            labels.add(data.get(dest.get(i)));
+        }
+
         for(int i = 0; i < stateStart.size(); i++) {
             int start = stateStart(i);
             int end = stateEnd(i);
@@ -49,11 +100,12 @@ public class BaseWalkUnlabeledFSA {
             GenericSorting.quickSort(start, end, new IntComparator() {
                 @Override
                 public int compare(int i, int i2) {
-                    return data.get(i) - data.get(i2);
+                    return Integer.compare(labels.get(i), labels.get(i2));
                 }
             }, new Swapper() {
                 @Override
                 public void swap(int i, int i2) {
+                    TroveUtils.swap(labels, i, i2);
                     TroveUtils.swap(dest, i, i2);
                 }
             });
@@ -0,0 +1,55 @@
+package name.kazennikov.fsa.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered writer of an int section of a file. The walker file formats consist of
+ * several sections (state starts, labels, destinations, ...) that are filled
+ * simultaneously by the event stream. Each section has its own buffer and file position,
+ * so the sections are written by large batches with positional writes to the channel.
+ */
+public class IntSectionWriter {
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	final FileChannel channel;
+	final ByteBuffer buf;
+	long pos;
+
+	/**
+	 * @param channel target channel
+	 * @param pos section start position in bytes
+	 * @param bufferSize buffer size in bytes
+	 */
+	public IntSectionWriter(FileChannel channel, long pos, int bufferSize) {
+		this.channel = channel;
+		this.pos = pos;
+		this.buf = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	public IntSectionWriter(FileChannel channel, long pos) {
+		this(channel, pos, DEFAULT_BUFFER_SIZE);
+	}
+
+	public void put(int value) throws IOException {
+		if(buf.remaining() < 4)
+			flush();
+
+		buf.putInt(value);
+	}
+
+	/**
+	 * Write buffered data to the channel
+	 */
+	public void flush() throws IOException {
+		buf.flip();
+
+		while(buf.hasRemaining()) {
+			pos += channel.write(buf, pos);
+		}
+
+		buf.clear();
+	}
+
+}
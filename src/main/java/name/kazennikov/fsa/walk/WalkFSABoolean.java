@@ -8,12 +8,19 @@ import gnu.trove.set.hash.TIntHashSet;
 import name.kazennikov.dafsa.TroveUtils;
 import name.kazennikov.fsa.Constants;
 import name.kazennikov.fsa.IntFSABooleanEventHandler;
-
+import name.kazennikov.fsa.IntFSAView;
+import name.kazennikov.fsa.MemoryFootprint;
+import name.kazennikov.fsa.SuffixCursor;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 
-public class WalkFSABoolean extends BaseWalkFSA {
+public class WalkFSABoolean extends BaseWalkFSA implements IntFSAView {
     public static interface AnnotationProcessor {
         public boolean process(TIntArrayList annotBuf);
     }
@@ -52,6 +59,12 @@ public class WalkFSABoolean extends BaseWalkFSA {
     private final long serialVersionUUID = 2L;
     public static final int ANNOTATION_LABEL = 0;
 
+    /**
+     * File format magic, 'WFSB'
+     */
+    public static final int MAGIC = 0x57465342;
+    public static final int HEADER_SIZE = 12;
+
 
 	public static class Builder implements IntFSABooleanEventHandler {
 		WalkFSABoolean fsa = new WalkFSABoolean();
@@ -96,6 +109,128 @@ public class WalkFSABoolean extends BaseWalkFSA {
 
 	}
 
+    /**
+     * Writes walker to the file from the event stream without building it in memory.
+     * The file format is:
+     * <ul>
+     * <li> header: magic, state count, transition count
+     * <li> state starts
+     * <li> transition labels
+     * <li> transition destinations
+     * <li> final bits, 32 states per int
+     * </ul>
+     */
+    public static class FileBuilder extends BaseWalkFSAFileBuilder implements IntFSABooleanEventHandler {
+        IntSectionWriter finals;
+        boolean isFinal;
+        int finalWord;
+
+        public FileBuilder(FileChannel channel, int stateCount, int transitionCount) {
+            super(channel, HEADER_SIZE, stateCount, transitionCount);
+            finals = new IntSectionWriter(channel, finalsPosition(), 1 << 12);
+        }
+
+        @Override
+        public void startState(int state) {
+            // flush complete final word
+            if(state != 0 && (state & 31) == 0) {
+                put(finals, finalWord);
+                finalWord = 0;
+            }
+
+            super.startState(state);
+        }
+
+        @Override
+        public void setFinal() {
+            if(isFinal)
+                finalWord |= 1 << (state & 31);
+        }
+
+        @Override
+        public void setFinalValue(boolean value) {
+            isFinal = value;
+        }
+
+        @Override
+        protected void finishFinals() throws IOException {
+            if(stateCount > 0)
+                finals.put(finalWord);
+
+            finals.flush();
+        }
+
+        @Override
+        protected int[] header() {
+            return new int[] {MAGIC, stateCount, transitionCount};
+        }
+    }
+
+    /**
+     * Emit this FSA to events
+     * @param events events object
+     */
+    public void emit(IntFSABooleanEventHandler events) {
+        for(int i = 0; i < stateStart.size(); i++) {
+            events.startState(i);
+            events.setFinalValue(finals.get(i));
+            events.setFinal();
+
+            int end = stateEnd(i);
+            for(int j = stateStart(i); j < end; j++) {
+                events.addTransition(labels.get(j), dest.get(j));
+            }
+
+            events.endState();
+        }
+    }
+
+    /**
+     * Write this FSA to the file
+     * @param file target file
+     */
+    public void write(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            FileBuilder builder = new FileBuilder(channel, size(), dest.size());
+            emit(builder);
+            builder.finish();
+        }
+    }
+
+    /**
+     * Read FSA from the file written by {@link FileBuilder}
+     * @param file source file
+     */
+    public static WalkFSABoolean read(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int[] header = readInts(channel, 0, 3);
+
+            if(header[0] != MAGIC)
+                throw new IOException("Not a WalkFSABoolean file: " + file);
+
+            int stateCount = header[1];
+            int transitionCount = header[2];
+
+            WalkFSABoolean fsa = new WalkFSABoolean();
+            long pos = HEADER_SIZE;
+            fsa.stateStart = TIntArrayList.wrap(readInts(channel, pos, stateCount));
+            pos += 4L * stateCount;
+            fsa.labels = TIntArrayList.wrap(readInts(channel, pos, transitionCount));
+            pos += 4L * transitionCount;
+            fsa.dest = TIntArrayList.wrap(readInts(channel, pos, transitionCount));
+            pos += 4L * transitionCount;
+
+            int[] bits = readInts(channel, pos, (stateCount + 31) >>> 5);
+            for(int i = 0; i < stateCount; i++) {
+                if((bits[i >>> 5] & (1 << (i & 31))) != 0)
+                    fsa.finals.set(i);
+            }
+
+            return fsa;
+        }
+    }
+
     /**
      * Check if state have an annotation transitiion
      * (transition with annotation label)
@@ -109,6 +244,22 @@ public class WalkFSABoolean extends BaseWalkFSA {
         return finals.get(state);
     }
 
+    @Override
+    public MemoryFootprint footprint() {
+        return super.footprint().add(MemoryFootprint.Part.FINALS, finals.cardinality(),
+                MemoryFootprint.object(MemoryFootprint.REFERENCE + 5) + MemoryFootprint.array(finals.size() / 64, 8));
+    }
+
+    /**
+     * Estimate footprint of the walker before it is built
+     * @param stateCount number of states
+     * @param transitionCount number of transitions
+     */
+    public static MemoryFootprint estimate(int stateCount, int transitionCount) {
+        return estimateTable(stateCount, transitionCount).add(MemoryFootprint.Part.FINALS, 0,
+                MemoryFootprint.object(MemoryFootprint.REFERENCE + 5) + MemoryFootprint.array((stateCount + 63) / 64, 8));
+    }
+
     /**
      * Collect annotations starting at the state
      * @param state start state
@@ -118,15 +269,27 @@ public class WalkFSABoolean extends BaseWalkFSA {
      * @return annotation data
      */
     public TIntArrayList collectAnnotationsSimple(int state, boolean needSep, int sepValue) {
+        return collectAnnotationsSimple(state, needSep, sepValue, -1);
+    }
+
+    /**
+     * Collect annotations starting at the state
+     * @param state start state
+     * @param needSep true if needed a separator to output list
+     * @param sepValue separator value
+     * @param limit maximum number of annotations, -1 for unlimited
+     *
+     * @return annotation data
+     */
+    public TIntArrayList collectAnnotationsSimple(int state, boolean needSep, int sepValue, int limit) {
         TIntArrayList annots = new TIntArrayList();
+        int annotState = next(state, ANNOTATION_LABEL);
 
-        if(!hasAnnotStart(state))
+        if(annotState == Constants.INVALID_STATE)
             return annots;
 
         AnnotationCollector proc = new AnnotationCollector(annots, needSep, sepValue);
-
-        TIntArrayList data = new TIntArrayList();
-        collectAnnotations(next(state, 0), data, true, proc);
+        collectAnnotations(annotState, new TIntArrayList(), true, proc, limit);
         return annots;
     }
 
@@ -152,40 +315,43 @@ public class WalkFSABoolean extends BaseWalkFSA {
         return annots;
     }
 
-
-
     /**
-     * Recursively collect annotation from the FSA
+     * Collect annotation from the FSA. The processing of the subtree below the final state is
+     * skipped if the processor returns true
      * @param state start state
-     * @param data current annotation data
+     * @param data current annotation data, annotation labels are appended to it
      * @param passedAnnotChar flag of passing the annotation char in the FSA
      * @param proc annotation processor
-     *
-     * @return annotation data
      */
     public void collectAnnotations(int state, TIntArrayList data, boolean passedAnnotChar, AnnotationProcessor proc) {
+        collectAnnotations(state, data, passedAnnotChar, proc, -1);
+    }
 
-        if(finals.get(state)) {
-            boolean res = proc.process(data);
-            if(res)
-                return;
-        }
-
-        int start = stateStart.get(state);
-        int end = state < stateStart.size() - 1? stateStart.get(state + 1) : stateStart.size();
-
-        while(start < end) {
-            int input = labels.get(start);
-            if(passedAnnotChar)
-                data.add(labels.get(start));
+    /**
+     * Collect annotation from the FSA. The enumeration uses explicit stack, so it doesn't depend
+     * on the FSA depth
+     * @param state start state
+     * @param data current annotation data, annotation labels are appended to it
+     * @param passedAnnotChar flag of passing the annotation char in the FSA
+     * @param proc annotation processor
+     * @param limit maximum number of processed annotations, -1 for unlimited
+     *
+     * @return number of processed annotations
+     */
+    public int collectAnnotations(int state, TIntArrayList data, boolean passedAnnotChar, AnnotationProcessor proc, int limit) {
+        SuffixCursor cursor = new SuffixCursor(this, ANNOTATION_LABEL);
+        cursor.reset(state, passedAnnotChar, data);
+        int count = 0;
 
-            collectAnnotations(dest.get(start), data, input == 0? true : passedAnnotChar, proc);
+        while(count != limit && cursor.next()) {
+            count++;
 
-            if(passedAnnotChar)
-                data.removeAt((data.size() - 1));
-            start++;
+            if(proc.process(data))
+                cursor.skipSubtree();
         }
 
+        cursor.finish();
+        return count;
     }
 
 }
@@ -2,6 +2,7 @@ package name.kazennikov.fsa.walk;
 
 import gnu.trove.set.hash.TIntHashSet;
 import name.kazennikov.fsa.IntFSABooleanEventHandler;
+import name.kazennikov.fsa.MemoryFootprint;
 import name.kazennikov.fsa.UnlabeledIntBooleanFSAEventHandler;
 
 public class WalkFSABooleanUnlabeled extends BaseWalkUnlabeledFSA {
@@ -11,6 +12,24 @@ public class WalkFSABooleanUnlabeled extends BaseWalkUnlabeledFSA {
 		return finals.contains(state);
 	}
 	
+	@Override
+	public MemoryFootprint footprint() {
+		return super.footprint().add(MemoryFootprint.Part.FINALS, finals.size(), MemoryFootprint.troveHash(finals, 4));
+	}
+	
+	/**
+	 * Estimate footprint of the walker before it is built
+	 * @param stateCount number of states
+	 * @param transitionCount number of transitions
+	 * @param finalCount number of final states
+	 */
+	public static MemoryFootprint estimate(int stateCount, int transitionCount, int finalCount) {
+		// trimmed trove hash has load factor 0.5
+		long capacity = 2L * finalCount + 1;
+		long bytes = MemoryFootprint.object(32) + MemoryFootprint.array(capacity, 4) + MemoryFootprint.array(capacity, 1);
+		return estimateTable(stateCount, transitionCount).add(MemoryFootprint.Part.FINALS, finalCount, bytes);
+	}
+	
 	
 	public static class Builder implements UnlabeledIntBooleanFSAEventHandler {
 		WalkFSABooleanUnlabeled fsa = new WalkFSABooleanUnlabeled();
@@ -19,7 +38,7 @@ public class WalkFSABooleanUnlabeled extends BaseWalkUnlabeledFSA {
 		
 		@Override
 		public void startState(int state, int data) {
-			fsa.stateStart.add(fsa.data.size());
+			fsa.stateStart.add(fsa.dest.size());
 			fsa.data.add(data);
 			this.state = state;
 		}
@@ -45,7 +64,10 @@ public class WalkFSABooleanUnlabeled extends BaseWalkUnlabeledFSA {
 		}
 		
 		public WalkFSABooleanUnlabeled build() {
+			fsa.sortTransitions();
 			fsa.dest.trimToSize();
+			fsa.labels.trimToSize();
+			fsa.data.trimToSize();
 			fsa.finals.trimToSize();
 			fsa.stateStart.trimToSize();
 			return fsa;
@@ -1,22 +1,78 @@
 package name.kazennikov.fsa.walk;
 
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import name.kazennikov.fsa.Constants;
+import name.kazennikov.fsa.IntFSAIntView;
 import name.kazennikov.fsa.IntFSAObjectEventHandler;
+import name.kazennikov.fsa.MemoryFootprint;
 
-public class WalkFSAInt extends BaseWalkFSA {
+public class WalkFSAInt extends BaseWalkFSA implements IntFSAIntView {
 	
 	List<int[]> finals = new ArrayList<>();
 	public static final int[] EMPTY = new int[0];
 	
+	/**
+	 * File format magic, 'WFSI'
+	 */
+	public static final int MAGIC = 0x57465349;
+	public static final int HEADER_SIZE = 16;
+	
 	
 	public int[] getFinals(int state) {
 		int[] fin = finals.get(state);
 		return fin != null? fin : EMPTY;
 	}
 	
+	@Override
+	public int[] getFinalValues(int state) {
+		return getFinals(state);
+	}
+	
+	@Override
+	public boolean isFinalState(int state) {
+		return getFinals(state).length != 0;
+	}
+	
+	@Override
+	public MemoryFootprint footprint() {
+		long bytes = MemoryFootprint.arrayList(finals.size());
+		int count = 0;
+		
+		for(int[] fin : finals) {
+			if(fin == null || fin.length == 0)
+				continue;
+			
+			count++;
+			bytes += MemoryFootprint.array(fin.length, 4);
+		}
+		
+		return super.footprint().add(MemoryFootprint.Part.FINALS, count, bytes);
+	}
+	
+	/**
+	 * Estimate footprint of the walker before it is built
+	 * 
+	 * @param stateCount number of states
+	 * @param transitionCount number of transitions
+	 * @param finalStates number of final states
+	 * @param valueCount total number of final values of all states
+	 */
+	public static MemoryFootprint estimate(int stateCount, int transitionCount, int finalStates, long valueCount) {
+		// value arrays are aligned individually, so half of the alignment is lost per array on average
+		long bytes = MemoryFootprint.arrayList(stateCount) 
+				+ finalStates * (MemoryFootprint.ARRAY_HEADER + MemoryFootprint.ALIGNMENT / 2) + valueCount * 4;
+		return estimateTable(stateCount, transitionCount).add(MemoryFootprint.Part.FINALS, finalStates, bytes);
+	}
+	
 	public int[] walk(String s) {
 		int state = 0;
 		for(int i = 0; i < s.length(); i++) {
@@ -61,6 +117,139 @@ public class WalkFSAInt extends BaseWalkFSA {
 		}
 		
 		public WalkFSAInt build() {
+			fsa.dest.trimToSize();
+			fsa.labels.trimToSize();
+			fsa.stateStart.trimToSize();
+			fsa.sortTransitions();
+			
+			return fsa;
+		}
+	}
+	
+	/**
+	 * Writes walker to the file from the event stream without building it in memory.
+	 * The file format is:
+	 * <ul>
+	 * <li> header: magic, state count, transition count, final value count
+	 * <li> state starts
+	 * <li> transition labels
+	 * <li> transition destinations
+	 * <li> final value starts
+	 * <li> final values
+	 * </ul>
+	 * Final values are the last section, so their total count needn't be known beforehand
+	 */
+	public static class FileBuilder extends BaseWalkFSAFileBuilder implements IntFSAObjectEventHandler<int[]> {
+		IntSectionWriter finalStarts;
+		IntSectionWriter finalValues;
+		int[] values = EMPTY;
+		int valueCount;
+		
+		public FileBuilder(FileChannel channel, int stateCount, int transitionCount) {
+			super(channel, HEADER_SIZE, stateCount, transitionCount);
+			long pos = finalsPosition();
+			finalStarts = new IntSectionWriter(channel, pos);
+			pos += 4L * stateCount;
+			finalValues = new IntSectionWriter(channel, pos);
+		}
+		
+		@Override
+		public void startState(int state) {
+			super.startState(state);
+			put(finalStarts, valueCount);
+			values = EMPTY;
+		}
+
+		@Override
+		public void setFinal() {
+			for(int value : values) {
+				put(finalValues, value);
+			}
+			
+			valueCount += values.length;
+		}
+
+		@Override
+		public void setFinalValue(int[] object) {
+			this.values = object;
+		}
+
+		@Override
+		protected void finishFinals() throws IOException {
+			finalStarts.flush();
+			finalValues.flush();
+		}
+
+		@Override
+		protected int[] header() {
+			return new int[] {MAGIC, stateCount, transitionCount, valueCount};
+		}
+	}
+	
+	/**
+	 * Emit this FSA to events
+	 * @param events events object
+	 */
+	public void emit(IntFSAObjectEventHandler<int[]> events) {
+		for(int i = 0; i < stateStart.size(); i++) {
+			events.startState(i);
+			events.setFinalValue(getFinals(i));
+			events.setFinal();
+			
+			int end = stateEnd(i);
+			for(int j = stateStart(i); j < end; j++) {
+				events.addTransition(labels.get(j), dest.get(j));
+			}
+			
+			events.endState();
+		}
+	}
+	
+	/**
+	 * Write this FSA to the file
+	 * @param file target file
+	 */
+	public void write(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			FileBuilder builder = new FileBuilder(channel, size(), dest.size());
+			emit(builder);
+			builder.finish();
+		}
+	}
+	
+	/**
+	 * Read FSA from the file written by {@link FileBuilder}
+	 * @param file source file
+	 */
+	public static WalkFSAInt read(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			int[] header = readInts(channel, 0, 4);
+			
+			if(header[0] != MAGIC)
+				throw new IOException("Not a WalkFSAInt file: " + file);
+			
+			int stateCount = header[1];
+			int transitionCount = header[2];
+			int valueCount = header[3];
+			
+			WalkFSAInt fsa = new WalkFSAInt();
+			long pos = HEADER_SIZE;
+			fsa.stateStart = TIntArrayList.wrap(readInts(channel, pos, stateCount));
+			pos += 4L * stateCount;
+			fsa.labels = TIntArrayList.wrap(readInts(channel, pos, transitionCount));
+			pos += 4L * transitionCount;
+			fsa.dest = TIntArrayList.wrap(readInts(channel, pos, transitionCount));
+			pos += 4L * transitionCount;
+			int[] starts = readInts(channel, pos, stateCount);
+			pos += 4L * stateCount;
+			int[] values = readInts(channel, pos, valueCount);
+			
+			for(int i = 0; i < stateCount; i++) {
+				int end = i + 1 < stateCount? starts[i + 1] : valueCount;
+				fsa.finals.add(end == starts[i]? EMPTY : Arrays.copyOfRange(values, starts[i], end));
+			}
+			
 			return fsa;
 		}
 	}
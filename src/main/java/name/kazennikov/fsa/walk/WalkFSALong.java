@@ -0,0 +1,194 @@
+package name.kazennikov.fsa.walk;
+
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import name.kazennikov.fsa.Constants;
+import name.kazennikov.fsa.LongFSABooleanEventHandler;
+import name.kazennikov.fsa.MemoryFootprint;
+
+import java.util.BitSet;
+
+/**
+ * Walker of the FSA with long labels and boolean finality. The labels are remapped at
+ * compile time to dense int ranks: the rank of a label is its index in the sorted alphabet
+ * of the automaton. The transition table is a {@link WalkFSABoolean} over the ranks, so
+ * the transitions are searched by binary search on int labels.
+ * 
+ * The input label is translated to its rank by a hash lookup once per symbol.
+ * The ranks keep the label order, so the rank walker enumerates words in the label order.
+ *
+ */
+public class WalkFSALong {
+	long[] alphabet;
+	TLongIntHashMap ranks;
+	WalkFSABoolean fsa;
+	
+	/**
+	 * Builds the walker from the event stream. The transitions are buffered with the long labels
+	 * until build(), as the alphabet is known only after all transitions are seen
+	 */
+	public static class Builder implements LongFSABooleanEventHandler {
+		TIntArrayList stateStart = new TIntArrayList();
+		TLongArrayList labels = new TLongArrayList();
+		TIntArrayList dest = new TIntArrayList();
+		BitSet finals = new BitSet();
+		boolean isFinal;
+		int state;
+
+		@Override
+		public void startState(int state) {
+			if(state != stateStart.size())
+				throw new IllegalStateException("States must be started in sequential order");
+			
+			stateStart.add(labels.size());
+			this.state = state;
+		}
+
+		@Override
+		public void setFinal() {
+			if(isFinal)
+				finals.set(state);
+		}
+
+		@Override
+		public void addTransition(long label, int destState) {
+			labels.add(label);
+			dest.add(destState);
+		}
+
+		@Override
+		public void endState() {
+		}
+
+		@Override
+		public void setFinalValue(boolean finalValue) {
+			isFinal = finalValue;
+		}
+		
+		public WalkFSALong build() {
+			WalkFSALong walker = new WalkFSALong();
+			TLongArrayList sorted = new TLongArrayList(labels);
+			sorted.sort();
+			
+			// unique labels
+			int n = 0;
+			for(int i = 0; i < sorted.size(); i++) {
+				if(n == 0 || sorted.get(n - 1) != sorted.get(i))
+					sorted.set(n++, sorted.get(i));
+			}
+			
+			walker.alphabet = sorted.toArray(0, n);
+			walker.ranks = new TLongIntHashMap(Math.max(n, 1), 0.5f, Long.MIN_VALUE, Constants.INVALID_STATE);
+			
+			for(int i = 0; i < n; i++) {
+				walker.ranks.put(walker.alphabet[i], i);
+			}
+			
+			WalkFSABoolean.Builder builder = new WalkFSABoolean.Builder();
+			
+			for(int s = 0; s < stateStart.size(); s++) {
+				int end = s + 1 == stateStart.size()? labels.size() : stateStart.get(s + 1);
+				builder.startState(s);
+				builder.setFinalValue(finals.get(s));
+				builder.setFinal();
+				
+				for(int i = stateStart.get(s); i < end; i++) {
+					builder.addTransition(walker.ranks.get(labels.get(i)), dest.get(i));
+				}
+				
+				builder.endState();
+			}
+			
+			walker.fsa = builder.build();
+			return walker;
+		}
+	}
+	
+	/**
+	 * Rank of the label
+	 * @return rank, or -1 if the label isn't in the alphabet
+	 */
+	public int rank(long label) {
+		return ranks.get(label);
+	}
+	
+	/**
+	 * Label of the rank
+	 */
+	public long label(int rank) {
+		return alphabet[rank];
+	}
+	
+	public int alphabetSize() {
+		return alphabet.length;
+	}
+	
+	/**
+	 * Translate the sequence to ranks. The labels outside the alphabet are translated to -1
+	 * 
+	 * @param seq source sequence
+	 * @param res result list
+	 */
+	public TIntArrayList encode(TLongList seq, TIntArrayList res) {
+		for(int i = 0; i < seq.size(); i++) {
+			res.add(ranks.get(seq.get(i)));
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Walker over the ranks, could be used directly with encoded sequences
+	 */
+	public WalkFSABoolean ranked() {
+		return fsa;
+	}
+	
+	public int getStartState() {
+		return fsa.getStartState();
+	}
+	
+	public int size() {
+		return fsa.size();
+	}
+	
+	public int next(int state, long input) {
+		int rank = ranks.get(input);
+		return rank == Constants.INVALID_STATE? Constants.INVALID_STATE : fsa.next(state, rank);
+	}
+	
+	public boolean isFinalState(int state) {
+		return fsa.isFinalState(state);
+	}
+	
+	/**
+	 * Walk the sequence from the start state
+	 * 
+	 * @return reached state, or -1 if the walk failed
+	 */
+	public int walk(TLongList seq, int start, int end) {
+		int state = getStartState();
+		
+		for(int i = start; i < end && state != Constants.INVALID_STATE; i++) {
+			state = next(state, seq.get(i));
+		}
+		
+		return state;
+	}
+	
+	public boolean contains(TLongList seq) {
+		int state = walk(seq, 0, seq.size());
+		return state != Constants.INVALID_STATE && isFinalState(state);
+	}
+	
+	/**
+	 * Compute memory footprint of the walker
+	 */
+	public MemoryFootprint footprint() {
+		long alphabetBytes = MemoryFootprint.array(alphabet.length, 8) + MemoryFootprint.troveHash(ranks, 12);
+		return fsa.footprint().add(MemoryFootprint.Part.OVERHEAD, alphabet.length, alphabetBytes);
+	}
+
+}
@@ -0,0 +1,350 @@
+package name.kazennikov.fsa.walk;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import name.kazennikov.fsa.Constants;
+import name.kazennikov.fsa.IntFSAObjectEventHandler;
+import name.kazennikov.fsa.IntFSAView;
+import name.kazennikov.fsa.MemoryFootprint;
+
+/**
+ * Walker with weighted words for top-k prefix completion.
+ * 
+ * The weight of the word is the final value of its final state. The weights are attached at
+ * the build time: the words are added to {@link name.kazennikov.dafsa.IntDAFSAInt} with the weight
+ * as final value and the DAFSA is emitted to the {@link Builder}. If the state has several final values,
+ * the maximal is used. As the weights are part of the final values, the words with different
+ * weights don't share the final states, so the automaton is minimal for (word, weight) pairs.
+ * 
+ * The builder stores the maximal weight of the words below each state. The completion is 
+ * best-first search ordered by this bound. Each queue entry guarantees a completion with weight 
+ * equal to its priority, so only the k best entries are kept in the queue and the completions 
+ * are found in descending weight order. The work depends on k and fan-out of visited states, 
+ * not on the size of the dictionary under the prefix.
+ * 
+ * The automaton must be acyclic.
+ *
+ */
+public class WalkFSAWeighted extends BaseWalkFSA implements IntFSAView {
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Weight of non-final state
+	 */
+	public static final int NO_WEIGHT = Integer.MIN_VALUE;
+	
+	/**
+	 * Completion receiver
+	 */
+	public static interface Callback {
+		/**
+		 * Process completion
+		 * 
+		 * @param word completed word (prefix and suffix), the buffer is reused
+		 * @param weight word weight
+		 * 
+		 * @return true to continue, false to stop
+		 */
+		public boolean accept(TIntList word, int weight);
+	}
+	
+	int[] weights;
+	int[] maxWeights;
+	
+	
+	public static class Builder implements IntFSAObjectEventHandler<int[]> {
+		WalkFSAWeighted fsa = new WalkFSAWeighted();
+		TIntArrayList weights = new TIntArrayList();
+		int weight;
+		
+		@Override
+		public void startState(int state) {
+			fsa.stateStart.add(fsa.labels.size());
+		}
+
+		@Override
+		public void setFinalValue(int[] object) {
+			weight = NO_WEIGHT;
+			
+			for(int value : object) {
+				weight = Math.max(weight, value);
+			}
+		}
+
+		@Override
+		public void setFinal() {
+			weights.add(weight);
+		}
+
+		@Override
+		public void addTransition(int label, int destState) {
+			fsa.labels.add(label);
+			fsa.dest.add(destState);
+		}
+
+		@Override
+		public void endState() {
+		}
+		
+		public WalkFSAWeighted build() {
+			fsa.dest.trimToSize();
+			fsa.labels.trimToSize();
+			fsa.stateStart.trimToSize();
+			fsa.sortTransitions();
+			fsa.weights = weights.toArray();
+			fsa.computeMaxWeights();
+			
+			return fsa;
+		}
+	}
+	
+	/**
+	 * Compute maximal weights of the subtrees by iterative post-order traversal
+	 */
+	void computeMaxWeights() {
+		int n = size();
+		maxWeights = new int[n];
+		byte[] color = new byte[n]; // 0 - new, 1 - on stack, 2 - done
+		int[] stack = new int[16];
+		int[] next = new int[16];
+		
+		for(int root = 0; root < n; root++) {
+			if(color[root] != 0)
+				continue;
+			
+			int top = 0;
+			stack[0] = root;
+			next[0] = stateStart(root);
+			color[root] = 1;
+			maxWeights[root] = weights[root];
+			
+			while(top >= 0) {
+				int state = stack[top];
+				
+				if(next[top] == stateEnd(state)) {
+					color[state] = 2;
+					top--;
+					
+					if(top >= 0)
+						maxWeights[stack[top]] = Math.max(maxWeights[stack[top]], maxWeights[state]);
+					
+					continue;
+				}
+				
+				int child = dest.get(next[top]++);
+				
+				if(color[child] == 2) {
+					maxWeights[state] = Math.max(maxWeights[state], maxWeights[child]);
+				} else if(color[child] == 1) {
+					throw new IllegalStateException("Weighted walker must be acyclic");
+				} else {
+					top++;
+					
+					if(top == stack.length) {
+						stack = Arrays.copyOf(stack, top * 2);
+						next = Arrays.copyOf(next, top * 2);
+					}
+					
+					stack[top] = child;
+					next[top] = stateStart(child);
+					color[child] = 1;
+					maxWeights[child] = weights[child];
+				}
+			}
+		}
+	}
+	
+	@Override
+	public boolean isFinalState(int state) {
+		return weights[state] != NO_WEIGHT;
+	}
+	
+	/**
+	 * Weight of the word ending in the state, {@link #NO_WEIGHT} if the state isn't final
+	 */
+	public int weight(int state) {
+		return weights[state];
+	}
+	
+	/**
+	 * Maximal weight of the words below the state (including the state itself)
+	 */
+	public int maxWeight(int state) {
+		return maxWeights[state];
+	}
+	
+	@Override
+	public MemoryFootprint footprint() {
+		int count = 0;
+		
+		for(int weight : weights) {
+			if(weight != NO_WEIGHT)
+				count++;
+		}
+		
+		return super.footprint().add(MemoryFootprint.Part.FINALS, count, 2 * MemoryFootprint.array(weights.length, 4));
+	}
+	
+	/**
+	 * Find k completions of the prefix with maximal weights. The completions are passed
+	 * to the callback in descending weight order
+	 * 
+	 * @param prefix word prefix
+	 * @param k maximum number of completions
+	 * @param callback completion receiver
+	 * 
+	 * @return number of found completions
+	 */
+	public int topK(TIntList prefix, int k, Callback callback) {
+		int state = getStartState();
+		
+		for(int i = 0; i < prefix.size() && state != Constants.INVALID_STATE; i++) {
+			state = next(state, prefix.get(i));
+		}
+		
+		if(state == Constants.INVALID_STATE || k <= 0 || maxWeights[state] == NO_WEIGHT)
+			return 0;
+		
+		// search tree nodes: node -> (parent node, transition index), transition -1 for the root
+		TIntArrayList parents = new TIntArrayList();
+		TIntArrayList transitions = new TIntArrayList();
+		
+		// queue of at most k - found entries, sorted by descending priority
+		// entry is the node, completions are encoded as ~node
+		int[] priorities = new int[k];
+		int[] entries = new int[k];
+		int size = 0;
+		int found = 0;
+		
+		TIntArrayList word = new TIntArrayList(prefix.size() + 16);
+		
+		parents.add(-1);
+		transitions.add(-1);
+		priorities[0] = maxWeights[state];
+		entries[0] = 0;
+		size = 1;
+		
+		while(size > 0) {
+			int entry = entries[0];
+			System.arraycopy(priorities, 1, priorities, 0, size - 1);
+			System.arraycopy(entries, 1, entries, 0, size - 1);
+			size--;
+			
+			if(entry < 0) {
+				int node = ~entry;
+				word.resetQuick();
+				word.addAll(prefix);
+				int len = word.size();
+				
+				for(int n = node; transitions.get(n) != -1; n = parents.get(n)) {
+					word.add(labels.get(transitions.get(n)));
+				}
+				
+				word.reverse(len, word.size());
+				found++;
+				
+				if(!callback.accept(word, weights[nodeState(node, state, transitions)]) || found == k)
+					return found;
+				
+				continue;
+			}
+			
+			int nodeState = nodeState(entry, state, transitions);
+			int limit = k - found;
+			
+			if(weights[nodeState] != NO_WEIGHT)
+				size = offer(priorities, entries, size, limit, weights[nodeState], ~entry);
+			
+			int end = stateEnd(nodeState);
+			
+			for(int t = stateStart(nodeState); t < end; t++) {
+				int child = dest.get(t);
+				
+				if(maxWeights[child] == NO_WEIGHT)
+					continue;
+				
+				// don't create nodes that will be dropped
+				if(size == limit && priorities[size - 1] >= maxWeights[child])
+					continue;
+				
+				parents.add(entry);
+				transitions.add(t);
+				size = offer(priorities, entries, size, limit, maxWeights[child], parents.size() - 1);
+			}
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * State of the search tree node
+	 */
+	int nodeState(int node, int root, TIntArrayList transitions) {
+		int t = transitions.get(node);
+		return t == -1? root : dest.get(t);
+	}
+	
+	/**
+	 * Insert entry to the bounded queue. Entries with equal priority keep insertion order
+	 * 
+	 * @return new queue size
+	 */
+	static int offer(int[] priorities, int[] entries, int size, int limit, int priority, int entry) {
+		int pos = size;
+		
+		while(pos > 0 && priorities[pos - 1] < priority) {
+			pos--;
+		}
+		
+		if(pos == limit)
+			return size;
+		
+		int tail = Math.min(size, limit - 1) - pos;
+		System.arraycopy(priorities, pos, priorities, pos + 1, tail);
+		System.arraycopy(entries, pos, entries, pos + 1, tail);
+		priorities[pos] = priority;
+		entries[pos] = entry;
+		
+		return Math.min(size + 1, limit);
+	}
+	
+	/**
+	 * Find k completions of the prefix with maximal weights. Labels are chars
+	 * 
+	 * @param prefix word prefix
+	 * @param k maximum number of completions
+	 * 
+	 * @return completions in descending weight order
+	 */
+	public List<String> topK(CharSequence prefix, int k) {
+		TIntArrayList p = new TIntArrayList(prefix.length());
+		
+		for(int i = 0; i < prefix.length(); i++) {
+			p.add(prefix.charAt(i));
+		}
+		
+		final List<String> res = new ArrayList<String>();
+		
+		topK(p, k, new Callback() {
+			@Override
+			public boolean accept(TIntList word, int weight) {
+				StringBuilder sb = new StringBuilder(word.size());
+				
+				for(int i = 0; i < word.size(); i++) {
+					sb.append((char) word.get(i));
+				}
+				
+				res.add(sb.toString());
+				return true;
+			}
+		});
+		
+		return res;
+	}
+
+}